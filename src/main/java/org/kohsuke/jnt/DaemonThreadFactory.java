@@ -0,0 +1,24 @@
+package org.kohsuke.jnt;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that worker pools don't keep the JVM alive.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class DaemonThreadFactory implements ThreadFactory {
+    private final String name;
+    private final AtomicInteger n = new AtomicInteger();
+
+    DaemonThreadFactory(String name) {
+        this.name = name;
+    }
+
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r,name+" #"+n.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,319 @@
+package org.kohsuke.jnt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Finds clusters of near-duplicate issues in a project with MinHash and locality-sensitive hashing.
+ *
+ * <p>
+ * Each issue is reduced to the set of word pairs (shingles) of its summary and descriptions,
+ * and then to a signature of {@link #NUM_HASHES} minimum hash values, where the fraction of
+ * matching values between two signatures estimates the Jaccard similarity of the shingle sets.
+ * The signatures are split into {@link #BANDS} bands, and only the issues that share a whole band
+ * are compared, so the cost is roughly linear in the number of issues rather than quadratic.
+ * With 20 bands of 5 rows, pairs that are 70% similar are found with 97% probability,
+ * while pairs that are 30% similar are compared only 5% of the time.
+ *
+ * <p>
+ * The signatures are saved in a file next to the search index, along with the checksums
+ * of the issue XMLs from {@link Manifest}, so subsequent runs only parse the issues that changed.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class DuplicateFinder {
+    private final OfflineIssueTracker tracker;
+    private final Manifest manifest;
+    private final File file;
+
+    DuplicateFinder(OfflineIssueTracker tracker, Manifest manifest, File file) {
+        this.tracker = tracker;
+        this.manifest = manifest;
+        this.file = file;
+    }
+
+    private static final class Signature {
+        final long checksum;
+        final int[] hashes;
+
+        Signature(long checksum, int[] hashes) {
+            this.checksum = checksum;
+            this.hashes = hashes;
+        }
+
+        /**
+         * Estimated Jaccard similarity.
+         */
+        float similarity(Signature that) {
+            int n = 0;
+            for( int i=0; i<NUM_HASHES; i++ )
+                if(hashes[i]==that.hashes[i])
+                    n++;
+            return (float)n/NUM_HASHES;
+        }
+    }
+
+    /**
+     * Finds the groups of issues whose estimated similarity with another issue of the same group
+     * is at least the given threshold.
+     *
+     * @return
+     *      Issue IDs of each group in the ascending order, the biggest group first.
+     */
+    List<List<Integer>> findClusters(float threshold) throws ProcessingException, IOException {
+        Map<Integer,Signature> signatures = updateSignatures();
+
+        int[] ids = new int[signatures.size()];
+        Signature[] sigs = new Signature[ids.length];
+        int n = 0;
+        for (Map.Entry<Integer,Signature> e : signatures.entrySet()) {
+            if(e.getValue().hashes==null)   continue;   // nothing to compare
+            ids[n] = e.getKey();
+            sigs[n] = e.getValue();
+            n++;
+        }
+
+        // union-find over the indexes of the arrays
+        int[] parent = new int[n];
+        for( int i=0; i<n; i++ )
+            parent[i] = i;
+
+        int compared = 0;
+        for( int b=0; b<BANDS; b++ ) {
+            Map<Long,List<Integer>> buckets = new HashMap<Long,List<Integer>>();
+            for( int i=0; i<n; i++ ) {
+                long key = 17;
+                for( int r=b*ROWS; r<(b+1)*ROWS; r++ )
+                    key = key*31+sigs[i].hashes[r];
+                List<Integer> bucket = buckets.get(key);
+                if(bucket==null)
+                    buckets.put(key,bucket=new ArrayList<Integer>(2));
+                bucket.add(i);
+            }
+            for (List<Integer> bucket : buckets.values()) {
+                for( int x=1; x<bucket.size(); x++ ) {
+                    for( int y=0; y<x; y++ ) {
+                        int i = bucket.get(x), j = bucket.get(y);
+                        if(find(parent,i)==find(parent,j))
+                            continue;   // already known to be in the same cluster
+                        compared++;
+                        if(sigs[i].similarity(sigs[j])>=threshold)
+                            parent[find(parent,i)] = find(parent,j);
+                    }
+                }
+            }
+        }
+        LOGGER.fine("Compared "+compared+" pairs among "+n+" issues");
+
+        Map<Integer,List<Integer>> clusters = new HashMap<Integer,List<Integer>>();
+        for( int i=0; i<n; i++ ) {
+            int root = find(parent,i);
+            List<Integer> c = clusters.get(root);
+            if(c==null)
+                clusters.put(root,c=new ArrayList<Integer>());
+            c.add(ids[i]);
+        }
+
+        List<List<Integer>> r = new ArrayList<List<Integer>>();
+        for (List<Integer> c : clusters.values()) {
+            if(c.size()<2)  continue;
+            Collections.sort(c);
+            r.add(c);
+        }
+        Collections.sort(r,new Comparator<List<Integer>>() {
+            public int compare(List<Integer> a, List<Integer> b) {
+                if(a.size()!=b.size())
+                    return b.size()-a.size();
+                return a.get(0)-b.get(0);
+            }
+        });
+        return r;
+    }
+
+    private static int find(int[] parent, int i) {
+        while(parent[i]!=i) {
+            parent[i] = parent[parent[i]];  // path halving
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Brings the signatures up to date with the issues, and saves them if anything changed.
+     */
+    private Map<Integer,Signature> updateSignatures() throws ProcessingException, IOException {
+        Map<Integer,Signature> old = load();
+        Map<Integer,Signature> current = new HashMap<Integer,Signature>();
+        List<Integer> stale = new ArrayList<Integer>();
+        for (Integer id : manifest.ids()) {
+            Manifest.Entry e = manifest.get(id);
+            if(e==null) continue;
+            Signature s = old.get(id);
+            if(s!=null && s.checksum==e.checksum)
+                current.put(id,s);
+            else
+                stale.add(id);
+        }
+
+        if(!stale.isEmpty() || current.size()!=old.size()) {
+            LOGGER.fine("Computing signatures of "+stale.size()+" issues");
+            Collections.sort(stale);
+            for( int i=0; i<stale.size(); i+=BATCH ) {
+                for (JNIssue issue : tracker.getAll(stale.subList(i,Math.min(i+BATCH,stale.size())))) {
+                    Manifest.Entry e = manifest.get(issue.getId());
+                    if(e!=null)
+                        current.put(issue.getId(),new Signature(e.checksum,minHash(IssueDocument.analyzeContents(issue))));
+                }
+            }
+            save(current);
+        }
+        return current;
+    }
+
+    /**
+     * Computes the MinHash signature of the word pairs in the given terms.
+     *
+     * @return null if there's no term.
+     */
+    static int[] minHash(List<String> terms) {
+        if(terms.isEmpty())
+            return null;
+
+        Set<Integer> shingles = new HashSet<Integer>();
+        if(terms.size()==1)
+            shingles.add(terms.get(0).hashCode());
+        for( int i=1; i<terms.size(); i++ )
+            shingles.add(terms.get(i-1).hashCode()*31+terms.get(i).hashCode());
+
+        int[] r = new int[NUM_HASHES];
+        Arrays.fill(r,Integer.MAX_VALUE);
+        for (int s : shingles) {
+            for( int i=0; i<NUM_HASHES; i++ ) {
+                int h = (int)(mix(s*HASH_A[i]+HASH_B[i])>>>33);
+                if(h<r[i])
+                    r[i] = h;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, to spread the bits of the linear hash.
+     */
+    private static long mix(long h) {
+        h ^= h>>>33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h>>>33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h>>>33;
+        return h;
+    }
+
+    private Map<Integer,Signature> load() {
+        Map<Integer,Signature> r = new HashMap<Integer,Signature>();
+        if(!file.exists())
+            return r;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if(in.readInt()!=MAGIC || in.readInt()!=FORMAT || in.readInt()!=NUM_HASHES)
+                    return r;
+                int n = in.readInt();
+                for( int i=0; i<n; i++ ) {
+                    int id = in.readInt();
+                    long checksum = in.readLong();
+                    int[] hashes = null;
+                    if(in.readBoolean()) {
+                        hashes = new int[NUM_HASHES];
+                        for( int j=0; j<NUM_HASHES; j++ )
+                            hashes[j] = in.readInt();
+                    }
+                    r.put(id,new Signature(checksum,hashes));
+                }
+                return r;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.info("Discarding unreadable signatures in "+file+": "+e);
+            r.clear();
+            return r;
+        }
+    }
+
+    /**
+     * Atomically rewrites the signature file. Signatures can be always recomputed, so it's not synced.
+     */
+    private void save(Map<Integer,Signature> signatures) throws IOException {
+        File tmp = new File(file.getPath()+".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(NUM_HASHES);
+            out.writeInt(signatures.size());
+            for (Map.Entry<Integer,Signature> e : signatures.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeLong(e.getValue().checksum);
+                int[] hashes = e.getValue().hashes;
+                out.writeBoolean(hashes!=null);
+                if(hashes!=null)
+                    for (int h : hashes)
+                        out.writeInt(h);
+            }
+        } finally {
+            out.close();
+        }
+        FileUtil.rename(tmp,file);
+    }
+
+    static final int NUM_HASHES = 100;
+    static final int BANDS = 20;
+    static final int ROWS = NUM_HASHES/BANDS;
+
+    private static final int MAGIC = 0x4f495453; // "OITS"
+
+    /**
+     * Bump this when the shingles or the hash functions change, to discard the saved signatures.
+     */
+    private static final int FORMAT = 1;
+
+    /**
+     * Coefficients of the hash functions, which must stay the same between runs
+     * for the saved signatures to be comparable.
+     */
+    private static final long[] HASH_A = new long[NUM_HASHES];
+    private static final long[] HASH_B = new long[NUM_HASHES];
+
+    static {
+        Random r = new Random(MAGIC);
+        for( int i=0; i<NUM_HASHES; i++ ) {
+            HASH_A[i] = r.nextLong()|1;
+            HASH_B[i] = r.nextLong();
+        }
+    }
+
+    /**
+     * Number of issues parsed at once when computing signatures.
+     */
+    private static final int BATCH = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(DuplicateFinder.class.getName());
+}
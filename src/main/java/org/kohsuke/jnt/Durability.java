@@ -0,0 +1,26 @@
+package org.kohsuke.jnt;
+
+/**
+ * How hard {@link IssueStore} tries to make sure that written issues survive a crash.
+ *
+ * <p>
+ * In all the modes, the new data becomes visible by an atomic rename,
+ * so a crash never leaves a truncated issue behind. The modes only differ
+ * in when the data is forced to the disk.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public enum Durability {
+    /**
+     * Leaves it up to the OS to flush the data.
+     */
+    NONE,
+    /**
+     * Forces all the files written in one batch to the disk together, just before they are published.
+     */
+    BATCH,
+    /**
+     * Forces every file to the disk before it's published.
+     */
+    PER_FILE
+}
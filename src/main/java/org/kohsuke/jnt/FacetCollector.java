@@ -0,0 +1,100 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.FieldCache.StringIndex;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the values of untokenized fields among the matching documents, in one pass.
+ *
+ * <p>
+ * Counting goes through the term ordinals of {@link FieldCache#getStringIndex(IndexReader, String)},
+ * which are computed once per segment and shared with string sorting. Each document
+ * only costs an array increment per field. The per-segment counts are then merged
+ * by the term value when the collector moves on to the next segment.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class FacetCollector extends Collector {
+    private final String[] fields;
+
+    /**
+     * Counts keyed by the field value, in the same order as {@link #fields}.
+     */
+    private final List<Map<String,Integer>> totals;
+
+    private StringIndex[] indexes;
+
+    /**
+     * Counts of the current segment, indexed by the term ordinal.
+     */
+    private int[][] counts;
+
+    private int hits;
+
+    FacetCollector(String... fields) {
+        this.fields = fields;
+        this.totals = new ArrayList<Map<String,Integer>>(fields.length);
+        for( int i=0; i<fields.length; i++ )
+            totals.add(new HashMap<String,Integer>());
+    }
+
+    public void setScorer(Scorer scorer) {
+        // scores are irrelevant
+    }
+
+    public void collect(int doc) {
+        hits++;
+        for( int i=0; i<counts.length; i++ )
+            counts[i][indexes[i].order[doc]]++;
+    }
+
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        flush();
+        indexes = new StringIndex[fields.length];
+        counts = new int[fields.length][];
+        for( int i=0; i<fields.length; i++ ) {
+            indexes[i] = FieldCache.DEFAULT.getStringIndex(reader,fields[i]);
+            counts[i] = new int[indexes[i].lookup.length];
+        }
+    }
+
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * Merges the counts of the current segment into the totals.
+     */
+    private void flush() {
+        if(counts==null)    return;
+        for( int i=0; i<fields.length; i++ ) {
+            String[] lookup = indexes[i].lookup;
+            int[] c = counts[i];
+            Map<String,Integer> total = totals.get(i);
+            // ordinal 0 is for documents that don't have the field
+            for( int ord=1; ord<c.length; ord++ ) {
+                if(c[ord]==0)   continue;
+                Integer old = total.get(lookup[ord]);
+                total.put(lookup[ord],old==null ? c[ord] : old+c[ord]);
+            }
+        }
+        counts = null;
+    }
+
+    FacetResult getResult() {
+        flush();
+        Map<String,Map<String,Integer>> r = new HashMap<String,Map<String,Integer>>();
+        for( int i=0; i<fields.length; i++ )
+            r.put(fields[i],totals.get(i));
+        return new FacetResult(hits,fields,r);
+    }
+}
@@ -0,0 +1,65 @@
+package org.kohsuke.jnt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Number of matching issues for each value of the requested fields.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see OfflineIssueTracker#facets(String, IssueFilter, String...)
+ */
+public final class FacetResult {
+    private final int totalHits;
+    private final List<String> fields;
+    private final Map<String,Map<String,Integer>> counts;
+
+    FacetResult(int totalHits, String[] fields, Map<String,Map<String,Integer>> counts) {
+        this.totalHits = totalHits;
+        this.fields = Collections.unmodifiableList(Arrays.asList(fields));
+        this.counts = counts;
+    }
+
+    /**
+     * Number of issues that matched the query.
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * Fields that are counted, in the requested order.
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Counts of the given field, from the most frequent value to the least.
+     * Values that no matching issue has are not included.
+     */
+    public Map<String,Integer> getCounts(String field) {
+        Map<String,Integer> m = counts.get(field);
+        if(m==null)
+            return Collections.emptyMap();
+
+        List<Entry<String,Integer>> entries = new ArrayList<Entry<String,Integer>>(m.entrySet());
+        Collections.sort(entries,new Comparator<Entry<String,Integer>>() {
+            public int compare(Entry<String,Integer> x, Entry<String,Integer> y) {
+                int d = y.getValue()-x.getValue();
+                if(d!=0)    return d;
+                return x.getKey().compareTo(y.getKey());
+            }
+        });
+        Map<String,Integer> r = new LinkedHashMap<String,Integer>();
+        for (Entry<String,Integer> e : entries)
+            r.put(e.getKey(),e.getValue());
+        return r;
+    }
+}
@@ -0,0 +1,25 @@
+package org.kohsuke.jnt;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * File system utility code.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class FileUtil {
+    private FileUtil() {}
+
+    /**
+     * Replaces the destination file by the source file.
+     */
+    static void rename(File src, File dst) throws IOException {
+        if(src.renameTo(dst))
+            return;
+        // Windows doesn't let us rename over an existing file
+        dst.delete();
+        if(!src.renameTo(dst))
+            throw new IOException("Failed to rename "+src+" to "+dst);
+    }
+}
@@ -0,0 +1,115 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.document.Field.TermVector;
+
+/**
+ * Controls how {@link IssueDocument} turns issues into documents,
+ * trading the size of the search index for what it can do.
+ *
+ * <p>
+ * The options are recorded along with the index, and stay in effect until they are changed
+ * by {@link OfflineIssueTracker#setIndexOptions(IndexOptions)}, which rebuilds the index
+ * the next time it's used.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class IndexOptions {
+    private boolean compressStoredFields;
+    private int maxAnalyzedChars = Integer.MAX_VALUE;
+    private TermVector termVector = TermVector.NO;
+
+    public IndexOptions() {
+    }
+
+    public IndexOptions(IndexOptions that) {
+        this.compressStoredFields = that.compressStoredFields;
+        this.maxAnalyzedChars = that.maxAnalyzedChars;
+        this.termVector = that.termVector;
+    }
+
+    /**
+     * If true, the summary is stored deflated. This pays off for projects with long summaries,
+     * but short ones can get bigger, and every search hit needs to be inflated.
+     * Defaults to false.
+     */
+    public boolean isCompressStoredFields() {
+        return compressStoredFields;
+    }
+
+    public IndexOptions setCompressStoredFields(boolean b) {
+        this.compressStoredFields = b;
+        return this;
+    }
+
+    /**
+     * Maximum number of characters of the summary and the descriptions that are analyzed
+     * into the "contents" field of one issue. Descriptions beyond that, such as
+     * long comment threads and pasted stack traces, aren't searchable.
+     * Defaults to no limit.
+     */
+    public int getMaxAnalyzedChars() {
+        return maxAnalyzedChars;
+    }
+
+    public IndexOptions setMaxAnalyzedChars(int n) {
+        if(n<=0)
+            throw new IllegalArgumentException("Invalid number of characters: "+n);
+        this.maxAnalyzedChars = n;
+        return this;
+    }
+
+    /**
+     * Whether to store term vectors of the "contents" field, which speeds up
+     * finding similar issues and highlighting, at the expense of the index size.
+     * Defaults to {@link TermVector#NO}.
+     */
+    public TermVector getTermVector() {
+        return termVector;
+    }
+
+    public IndexOptions setTermVector(TermVector termVector) {
+        if(termVector==null)
+            throw new IllegalArgumentException();
+        this.termVector = termVector;
+        return this;
+    }
+
+    /**
+     * Identifies the options in the index version file.
+     */
+    public String toString() {
+        return "compress="+compressStoredFields+",maxAnalyzedChars="+maxAnalyzedChars+",termVector="+termVector;
+    }
+
+    /**
+     * Parses the output of {@link #toString()}.
+     */
+    static IndexOptions parse(String s) {
+        IndexOptions o = new IndexOptions();
+        for (String token : s.split(",")) {
+            int idx = token.indexOf('=');
+            if(idx<0)   throw new IllegalArgumentException(s);
+            String k = token.substring(0,idx);
+            String v = token.substring(idx+1);
+            if(k.equals("compress"))
+                o.setCompressStoredFields(Boolean.valueOf(v));
+            else
+            if(k.equals("maxAnalyzedChars"))
+                o.setMaxAnalyzedChars(Integer.parseInt(v));
+            else
+            if(k.equals("termVector"))
+                o.setTermVector(TermVector.valueOf(v));
+            else
+                throw new IllegalArgumentException(s);
+        }
+        return o;
+    }
+
+    public boolean equals(Object o) {
+        return o instanceof IndexOptions && o.toString().equals(toString());
+    }
+
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
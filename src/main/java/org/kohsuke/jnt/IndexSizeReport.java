@@ -0,0 +1,165 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Breaks down the size of the search index by file type and by field.
+ *
+ * <p>
+ * Lucene keeps all the fields in the same files, so the per-field numbers are counts
+ * of what each field contributes (terms, postings, positions, stored bytes),
+ * from which the share of each field in the corresponding files can be estimated.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see OfflineIssueTracker#getIndexSizeReport()
+ */
+public final class IndexSizeReport {
+    private final int numDocs;
+    private final Map<String,Long> files = new TreeMap<String,Long>();
+    private final Map<String,FieldSize> fields = new TreeMap<String,FieldSize>();
+
+    /**
+     * What one field contributes to the index.
+     */
+    public static final class FieldSize {
+        private final String name;
+        private long terms, termChars, postings, positions, storedBytes;
+
+        FieldSize(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Number of unique terms, which goes into the term dictionary.
+         */
+        public long getTerms() {
+            return terms;
+        }
+
+        /**
+         * Total length of the unique terms.
+         */
+        public long getTermChars() {
+            return termChars;
+        }
+
+        /**
+         * Number of (term,document) pairs, which goes into the postings.
+         */
+        public long getPostings() {
+            return postings;
+        }
+
+        /**
+         * Number of term occurrences, which goes into the positions.
+         */
+        public long getPositions() {
+            return positions;
+        }
+
+        /**
+         * Total size of the stored values, before compression by {@link IndexOptions#isCompressStoredFields()}
+         * for string values, and after for binary values.
+         */
+        public long getStoredBytes() {
+            return storedBytes;
+        }
+    }
+
+    IndexSizeReport(Directory dir, IndexReader reader) throws IOException {
+        numDocs = reader.numDocs();
+
+        for (String f : dir.listAll()) {
+            int idx = f.lastIndexOf('.');
+            String ext = idx<0 ? f : f.substring(idx+1);
+            Long size = files.get(ext);
+            files.put(ext,(size==null?0:size)+dir.fileLength(f));
+        }
+
+        TermEnum te = reader.terms();
+        TermDocs td = reader.termDocs();
+        try {
+            while(te.next()) {
+                FieldSize fs = field(te.term().field());
+                fs.terms++;
+                fs.termChars += te.term().text().length();
+                fs.postings += te.docFreq();
+                td.seek(te);
+                while(td.next())
+                    fs.positions += td.freq();
+            }
+        } finally {
+            td.close();
+            te.close();
+        }
+
+        for( int i=0; i<reader.maxDoc(); i++ ) {
+            if(reader.isDeleted(i))
+                continue;
+            Document doc = reader.document(i);
+            for (Fieldable f : doc.getFields()) {
+                FieldSize fs = field(f.name());
+                if(f.isBinary())
+                    fs.storedBytes += f.getBinaryLength();
+                else if(f.stringValue()!=null)
+                    fs.storedBytes += f.stringValue().getBytes("UTF-8").length;
+            }
+        }
+    }
+
+    private FieldSize field(String name) {
+        FieldSize fs = fields.get(name);
+        if(fs==null)
+            fields.put(name,fs=new FieldSize(name));
+        return fs;
+    }
+
+    public int getNumDocs() {
+        return numDocs;
+    }
+
+    /**
+     * Total bytes of the index files, keyed by their extension, such as "fdt" for the stored fields.
+     */
+    public Map<String,Long> getFileSizes() {
+        return Collections.unmodifiableMap(files);
+    }
+
+    public long getTotalSize() {
+        long total = 0;
+        for (long size : files.values())
+            total += size;
+        return total;
+    }
+
+    public Collection<FieldSize> getFields() {
+        return Collections.unmodifiableCollection(fields.values());
+    }
+
+    public String toString() {
+        Formatter f = new Formatter();
+        f.format("%d documents, %,d bytes%n",numDocs,getTotalSize());
+        for (Map.Entry<String,Long> e : files.entrySet())
+            f.format("  %-10s %,14d%n",e.getKey(),e.getValue());
+        f.format("%-14s %10s %12s %12s %12s %12s%n","field","terms","term chars","postings","positions","stored");
+        for (FieldSize fs : fields.values())
+            f.format("%-14s %,10d %,12d %,12d %,12d %,12d%n",fs.name,fs.terms,fs.termChars,fs.postings,fs.positions,fs.storedBytes);
+        return f.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package org.kohsuke.jnt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of parsed {@link JNIssue}s.
+ *
+ * <p>
+ * The lock is only held briefly to look up and update the LRU map.
+ * Parsing happens outside of it, and concurrent requests for the same ID
+ * wait for the single load in progress instead of parsing it again.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class IssueCache {
+    /**
+     * Loads an issue that's not in the cache.
+     */
+    interface Loader {
+        /**
+         * @return null if no such issue exists.
+         */
+        JNIssue load(int id) throws ProcessingException;
+    }
+
+    private volatile int capacity;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Guarded by itself. Access ordered, so the eldest entry is the least recently used one.
+     */
+    private final Map<Integer,FutureTask<JNIssue>> map = new LinkedHashMap<Integer,FutureTask<JNIssue>>(16,0.75f,true) {
+        protected boolean removeEldestEntry(Map.Entry<Integer,FutureTask<JNIssue>> eldest) {
+            if(size()>capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    IssueCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Gets the issue from the cache, or load it by using the given loader.
+     */
+    JNIssue get(final int id, final Loader loader) throws ProcessingException {
+        FutureTask<JNIssue> f;
+        boolean owner = false;
+        synchronized (map) {
+            f = map.get(id);
+            if(f==null) {
+                f = new FutureTask<JNIssue>(new Callable<JNIssue>() {
+                    public JNIssue call() throws ProcessingException {
+                        return loader.load(id);
+                    }
+                });
+                map.put(id,f);
+                owner = true;
+            }
+        }
+
+        if(owner) {
+            misses.incrementAndGet();
+            f.run();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        try {
+            JNIssue r = f.get();
+            if(r==null)
+                remove(id,f);   // don't remember non-existent issues
+            return r;
+        } catch (ExecutionException e) {
+            remove(id,f);   // let the next caller retry
+            Throwable t = e.getCause();
+            if(t instanceof ProcessingException)
+                throw (ProcessingException)t;
+            if(t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if(t instanceof Error)
+                throw (Error)t;
+            throw new ProcessingException(t);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException(e);
+        }
+    }
+
+    /**
+     * Puts an already parsed issue into the cache, replacing the older copy if any.
+     */
+    void put(final JNIssue issue) {
+        FutureTask<JNIssue> f = new FutureTask<JNIssue>(new Callable<JNIssue>() {
+            public JNIssue call() {
+                return issue;
+            }
+        });
+        f.run();
+        synchronized (map) {
+            map.put(issue.getId(),f);
+        }
+    }
+
+    private void remove(int id, FutureTask<JNIssue> f) {
+        synchronized (map) {
+            if(map.get(id)==f)
+                map.remove(id);
+        }
+    }
+
+    /**
+     * Discards all the cached issues.
+     */
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    /**
+     * Maximum number of issues kept in memory.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        if(capacity<=0)
+            throw new IllegalArgumentException("Invalid cache capacity: "+capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Number of issues currently in the cache.
+     */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public String toString() {
+        return String.format("IssueCache[size=%d/%d,hits=%d,misses=%d,evictions=%d]",
+                size(), capacity, getHitCount(), getMissCount(), getEvictionCount());
+    }
+}
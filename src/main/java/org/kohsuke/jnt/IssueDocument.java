@@ -2,124 +2,373 @@ package org.kohsuke.jnt;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.KeywordAnalyzer;
-import org.apache.lucene.analysis.KeywordTokenizer;
 import org.apache.lucene.analysis.PerFieldAnalyzerWrapper;
-import org.apache.lucene.analysis.Token;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.CompressionTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.Term;
 import org.kohsuke.jnt.JNIssue.Description;
-import org.kohsuke.jnt.lucene.NumberUtils;
-import org.kohsuke.jnt.lucene.QueryParser2;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.Version;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
 
 /**
  * Converts {@link JNIssue} into the {@link Document}.
+ *
+ * <p>
+ * An instance keeps its {@link Field}s and {@link NumericField}s,
+ * and {@link #build(JNIssue)} refills them for each issue, so that indexing many issues
+ * doesn't create garbage for every field of every issue. An instance is not thread-safe,
+ * and the returned document is only valid until the next {@link #build(JNIssue)} call,
+ * so use one instance per indexing thread and add the document to the index right away.
+ *
+ * <p>
+ * Only the fields that {@link IssueHit} needs are stored. The summary and each description
+ * go into the "contents" field as separate values, and {@link #ISSUE_ANALYZER} puts a gap of
+ * {@link #CONTENTS_POSITION_GAP} positions between them, so that phrase and proximity queries
+ * don't match across comments.
  * 
  * @author Kohsuke Kawaguchi
  */
 public class IssueDocument {
+    private final IndexOptions options;
+    private final Map<String,Field> fields = new HashMap<String,Field>();
+    private final Map<String,NumericField> numericFields = new HashMap<String,NumericField>();
+    private final List<Field> contentsFields = new ArrayList<Field>();
+    private Field compressedSummary;
+    private Document doc;
+
+    public IssueDocument() {
+        this(new IndexOptions());
+    }
+
+    public IssueDocument(IndexOptions options) {
+        this.options = new IndexOptions(options);
+    }
+
+    /**
+     * Creates a new document for the given issue, which the caller can keep.
+     */
     public static Document create(JNIssue issue) {
-        final Document doc = new Document();
-        class Builder {
-            void addHeader(String name, int value) {
-                addHeader(name,value,Index.TOKENIZED);
-            }
-            void addHeader(String name, Enum value) {
-                addHeader(name,value,Index.UN_TOKENIZED);
-            }
-            void addHeader(String name, String value) {
-                addHeader(name,value,Index.UN_TOKENIZED);
-            }
-            void addHeader(String name, Date value) {
-                addHeader(name,
-                    DateTools.timeToString(value.getTime(), DateTools.Resolution.DAY),
-                    Index.UN_TOKENIZED);
-            }
-            void addHeader(String name, Object value, Index index) {
-                if(value==null) return; // nothing to index
-                // QueryString runs everything in lower case, so do it here, too.
-                doc.add(new Field(name,value.toString().toLowerCase(), Store.YES, index));
-            }
+        return new IssueDocument().build(issue);
+    }
+
+    /**
+     * Fills the fields with the given issue, and returns the document that consists of them.
+     */
+    public Document build(JNIssue issue) {
+        doc = new Document();
+        addHeader("type",issue.getType());
+        addHeader("reporter",issue.getReporter().getName());
+        addHeader("resolution",issue.getResolution());
+        addHeader("version",issue.getVersion().getName());
+        addHeader("status",issue.getStatus());
+        addHeader("created",issue.getCreationDate().getTimeInMillis());
+        addHeader("lastmodified",issue.getLastModified().getTimeInMillis());
+        addSummary(issue.getShortDescription());
+        addHeader("component",issue.getComponent());
+        addHeader("subcomponent",issue.getSubComponent());
+        addHeader("assignedTo",issue.getAssignedTo());
+        addHeader("id",issue.getId());
+        addHeader("votes",issue.getVotes());
+        addHeader("priority",issue.getPriority());
+        // derived flags for IssueFilter
+        addHeader("resolved",String.valueOf(issue.getResolution()!=null));
+        addHeader("needsWork",String.valueOf(issue.getStatus().needsWork));
+
+        List<String> contents = contents(issue,options.getMaxAnalyzedChars());
+        for( int i=0; i<contents.size(); i++ )
+            addContents(i,contents.get(i));
+
+        Document r = doc;
+        doc = null;
+        return r;
+    }
+
+    /**
+     * Lists the values of the "contents" field, which are the summary and the descriptions,
+     * cut off where they add up to the given number of characters.
+     */
+    private static List<String> contents(JNIssue issue, int maxChars) {
+        List<String> texts = new ArrayList<String>();
+        texts.add(issue.getShortDescription());
+        for (Description d : issue.getDescriptions())
+            texts.add(d.getText());
+
+        List<String> r = new ArrayList<String>(texts.size());
+        int budget = maxChars;
+        for (String text : texts) {
+            if(budget<=0)   break;
+            if(text==null)  continue;
+            if(text.length()>budget)
+                text = text.substring(0,budget);
+            r.add(text);
+            budget -= text.length();
         }
-        Builder b = new Builder();
-        b.addHeader("type",issue.getType());
-        b.addHeader("reporter",issue.getReporter().getName());
-        b.addHeader("resolution",issue.getResolution());
-        b.addHeader("version",issue.getVersion().getName());
-        b.addHeader("status",issue.getStatus());
-        b.addHeader("created",issue.getCreationDate().getTime());
-        b.addHeader("lastmodified",issue.getLastModified().getTime());
-        b.addHeader("summary",issue.getShortDescription(),Index.TOKENIZED);
-        b.addHeader("component",issue.getComponent());
-        b.addHeader("subcomponent",issue.getSubComponent());
-        b.addHeader("assignedTo",issue.getAssignedTo());
-        // do the tokenization, which will run the text through NumberTokenizer below
-        b.addHeader("id",issue.getId());
-        b.addHeader("votes",issue.getVotes());
-        b.addHeader("priority",issue.getPriority());
-
-        StringBuilder buf = new StringBuilder();
-        buf.append(issue.getShortDescription()).append("\n");
-        for (Description d : issue.getDescriptions()) {
-            if(buf.length()>0)  buf.append("\n\n\n");
-            buf.append(d.getText());
+        return r;
+    }
+
+    /**
+     * Adds one value of the "contents" field.
+     */
+    private void addContents(int i, String text) {
+        Field f;
+        if(i<contentsFields.size()) {
+            f = contentsFields.get(i);
+            f.setValue(text);
+        } else {
+            contentsFields.add(f=new Field("contents",text,Store.NO,Index.ANALYZED,options.getTermVector()));
+        }
+        doc.add(f);
+    }
+
+    private void addSummary(String value) {
+        if(value==null) return;
+        if(!options.isCompressStoredFields()) {
+            addHeader("summary",value,Index.ANALYZED);
+            return;
         }
-        doc.add(new Field("contents",new StringReader(buf.toString())));
+        addField("summary",value,Store.NO,Index.ANALYZED);
+        byte[] data = CompressionTools.compressString(value);
+        if(compressedSummary==null)
+            compressedSummary = new Field("summary",data);
+        else
+            compressedSummary.setValue(data);
+        doc.add(compressedSummary);
+    }
 
-        return doc;
+    private void addHeader(String name, int value) {
+        doc.add(numericField(name).setIntValue(value));
     }
 
     /**
-     * Lucene only handles string types for fields, so we need some hack to make
-     * integer fields like "votes" and "ID" work, especially wrt range query
-     * (like "votes>5").
-     * <p>
-     * This needs to be done in 2 places. First, this analyzer has a proper
-     * "tokenization" code, which encodes numbers into strings in such a way
-     * that preserves lexicological order. (see {@link NumberUtils}) This works
-     * for index creation and the term query in {@link QueryParser}.
+     * Dates are indexed as milliseconds since the epoch.
+     */
+    private void addHeader(String name, long value) {
+        doc.add(numericField(name).setLongValue(value));
+    }
+
+    private void addHeader(String name, Enum value) {
+        if(value==null) return; // nothing to index
+        addHeader(name,lowerCaseName(value),Index.NOT_ANALYZED);
+    }
+
+    private void addHeader(String name, String value) {
+        if(value==null) return; // nothing to index
+        // QueryString runs everything in lower case, so do it here, too.
+        addHeader(name,value.toLowerCase(),Index.NOT_ANALYZED);
+    }
+
+    /**
+     * Tokenized fields are lower-cased by the analyzer, so their stored values are kept intact for display.
+     */
+    private void addHeader(String name, String value, Index index) {
+        if(value==null) return; // nothing to index
+        addField(name,value,STORED_FIELDS.contains(name) ? Store.YES : Store.NO,index);
+    }
+
+    private void addField(String name, String value, Store store, Index index) {
+        Field f = fields.get(name);
+        if(f==null)
+            fields.put(name,f=new Field(name,value,store,index));
+        else
+            f.setValue(value);
+        doc.add(f);
+    }
+
+    private NumericField numericField(String name) {
+        NumericField f = numericFields.get(name);
+        if(f==null)
+            // the field reuses its token stream when it's given a new value
+            numericFields.put(name,f=new NumericField(name,STORED_FIELDS.contains(name) ? Store.YES : Store.NO,true));
+        return f;
+    }
+
+    private static String lowerCaseName(Enum value) {
+        String s = LOWER_CASE_NAMES.get(value);
+        if(s==null)
+            LOWER_CASE_NAMES.put(value,s=value.toString().toLowerCase());
+        return s;
+    }
+
+    /**
+     * Lower-cased {@link Enum#toString()}, since there are only a handful of them.
+     */
+    private static final ConcurrentMap<Enum,String> LOWER_CASE_NAMES = new ConcurrentHashMap<Enum,String>();
+
+    /**
+     * Gets the stored value of the given field, inflating it if it's stored compressed.
+     */
+    static String getStoredString(Document doc, String name) {
+        String s = doc.get(name);
+        if(s!=null)
+            return s;
+        byte[] data = doc.getBinaryValue(name);
+        if(data==null)
+            return null;
+        try {
+            return CompressionTools.decompressString(data);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt stored field "+name,e);
+        }
+    }
+
+    /**
+     * Runs the summary and the descriptions of the issue through the analyzer of the "contents" field,
+     * and returns the terms in the order they appear.
+     */
+    static List<String> analyzeContents(JNIssue issue) throws IOException {
+        return analyzeContents(issue,Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #analyzeContents(JNIssue)}, but only up to the given number of characters,
+     * so that the terms are those that are indexed with {@link IndexOptions#getMaxAnalyzedChars()}.
+     */
+    static List<String> analyzeContents(JNIssue issue, int maxChars) throws IOException {
+        List<String> r = new ArrayList<String>();
+        for (String text : contents(issue,maxChars))
+            analyze("contents",text,r);
+        return r;
+    }
+
+    /**
+     * Same as {@link #analyzeContents(JNIssue)} for the "summary" field.
+     */
+    static List<String> analyzeSummary(JNIssue issue) throws IOException {
+        List<String> r = new ArrayList<String>();
+        analyze("summary",issue.getShortDescription(),r);
+        return r;
+    }
+
+    private static void analyze(String field, String text, List<String> terms) throws IOException {
+        if(text==null)  return;
+        TokenStream ts = ISSUE_ANALYZER.reusableTokenStream(field,new StringReader(text));
+        CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+        ts.reset();
+        while(ts.incrementToken())
+            terms.add(term.toString());
+        ts.end();
+        ts.close();
+    }
+
+    /**
+     * Fields that are stored in the index, which are those that {@link IssueHit} displays.
+     * The rest are only indexed.
+     */
+    public static final Set<String> STORED_FIELDS = new HashSet<String>(Arrays.asList(
+        "id","type","priority","status","resolution","subcomponent","votes","summary"));
+
+    /**
+     * Number of positions between the values of the "contents" field.
+     */
+    public static final int CONTENTS_POSITION_GAP = 100;
+
+    /**
+     * Version of the document structure produced by {@link #create(JNIssue)}.
+     * Bump this whenever the indexed fields change, so that the existing indexes get rebuilt.
+     */
+    public static final int VERSION = 5;
+
+    /**
+     * Version of Lucene whose analysis and query parsing behaviors we want.
+     */
+    public static final Version LUCENE_VERSION = Version.LUCENE_36;
+
+    /**
+     * Creates a {@link Term} that uniquely identifies the document of the given issue.
      *
      * <p>
-     * The other place is in {@link QueryParser2}, which knows what fields
-     * are int fields and perform suitable encoding.
+     * The "id" field is a {@link NumericField}, so the term has to be encoded the same way.
+     */
+    public static Term idTerm(int id) {
+        return new Term("id",NumericUtils.intToPrefixCoded(id));
+    }
+
+    /**
+     * Creates a {@link SortField} that sorts by the given field with the right type.
+     * Numeric fields sort by their values, and everything else sorts as strings.
+     */
+    public static SortField sortField(String field, boolean reverse) {
+        int type = SortField.STRING;
+        if(INT_FIELDS.contains(field))
+            type = SortField.INT;
+        if(DATE_FIELDS.contains(field))
+            type = SortField.LONG;
+        return new SortField(field,type,reverse);
+    }
+
+    /**
+     * Fields indexed as {@link NumericField}s of int.
+     */
+    public static final Set<String> INT_FIELDS = new HashSet<String>(Arrays.asList("id","votes"));
+
+    /**
+     * Fields indexed as {@link NumericField}s of long, in milliseconds since the epoch.
+     */
+    public static final Set<String> DATE_FIELDS = new HashSet<String>(Arrays.asList("created","lastmodified"));
+
+    /**
+     * Numeric fields are indexed as {@link NumericField}s, which bypass the analyzer,
+     * so this only needs to take care of the rest.
      */
     public static final Analyzer ISSUE_ANALYZER;
 
     static {
-        class NumberTokenizer extends KeywordTokenizer {
-            NumberTokenizer(Reader input) {
-                super(input);
-            }
-
-            public Token next(Token result) throws IOException {
-                Token r = super.next(result);
-                if(r!=null)
-                    r.setTermText(NumberUtils.int2sortableStr(r.termText()));
-                return r;
-            }
+        Map<String,Analyzer> m = new HashMap<String,Analyzer>();
+        m.put("subcomponent",new KeywordAnalyzer());
+        ISSUE_ANALYZER = new IssueAnalyzer(new PerFieldAnalyzerWrapper(new StandardAnalyzer(LUCENE_VERSION),m));
+    }
+
+    /**
+     * Adds {@link #CONTENTS_POSITION_GAP} between the values of the "contents" field.
+     */
+    private static final class IssueAnalyzer extends Analyzer {
+        private final Analyzer base;
+
+        IssueAnalyzer(Analyzer base) {
+            this.base = base;
         }
 
-        class NumberAnalyzer extends Analyzer {
-            public TokenStream tokenStream(String fieldName, Reader reader) {
-              return new NumberTokenizer(reader);
-            }
+        public TokenStream tokenStream(String fieldName, Reader reader) {
+            return base.tokenStream(fieldName,reader);
         }
 
-        PerFieldAnalyzerWrapper a = new PerFieldAnalyzerWrapper(new StandardAnalyzer());
-        a.addAnalyzer("votes",new NumberAnalyzer());
-        a.addAnalyzer("id",new NumberAnalyzer());
-        a.addAnalyzer("priority",new NumberAnalyzer());
-        a.addAnalyzer("subcomponent",new KeywordAnalyzer());
-        ISSUE_ANALYZER = a;
+        public TokenStream reusableTokenStream(String fieldName, Reader reader) throws IOException {
+            return base.reusableTokenStream(fieldName,reader);
+        }
+
+        public int getPositionIncrementGap(String fieldName) {
+            return fieldName.equals("contents") ? CONTENTS_POSITION_GAP : base.getPositionIncrementGap(fieldName);
+        }
+
+        public int getOffsetGap(Fieldable field) {
+            return base.getOffsetGap(field);
+        }
+
+        public void close() {
+            base.close();
+        }
     }
 }
@@ -0,0 +1,47 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Commonly used restrictions on search hits, evaluated inside the search index.
+ *
+ * <p>
+ * The filters are backed by the flags that {@link IssueDocument} derives from
+ * the issue status and resolution. Their bit sets are cached per index reader,
+ * so repeated queries only pay for them once until the index changes.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public enum IssueFilter {
+    /**
+     * No restriction.
+     */
+    ALL(null),
+    /**
+     * Issues that don't have a resolution yet.
+     */
+    UNRESOLVED(flag("resolved",false)),
+    /**
+     * Issues whose status indicates that someone needs to work on it.
+     *
+     * @see IssueStatus#needsWork
+     */
+    NEEDS_WORK(flag("needsWork",true));
+
+    /**
+     * Null for no filtering.
+     */
+    final Filter filter;
+
+    IssueFilter(Filter filter) {
+        this.filter = filter;
+    }
+
+    private static Filter flag(String field, boolean value) {
+        return new CachingWrapperFilter(new QueryWrapperFilter(new TermQuery(new Term(field,String.valueOf(value)))));
+    }
+}
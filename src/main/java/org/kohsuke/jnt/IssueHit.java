@@ -0,0 +1,115 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.document.Document;
+
+/**
+ * One search hit, rendered from the fields stored in the search index.
+ *
+ * <p>
+ * This carries enough information to print a one-line summary of an issue
+ * without parsing its XML. Call {@link #getIssue()} to load the full {@link JNIssue}.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see OfflineIssueTracker#find(String, String, int, int)
+ */
+public final class IssueHit {
+    private final OfflineIssueTracker tracker;
+    private final int id;
+    private final IssueType type;
+    private final Priority priority;
+    private final IssueStatus status;
+    private final IssueResolution resolution;
+    private final String subComponent;
+    private final int votes;
+    private final String summary;
+    private final float score;
+
+    private volatile JNIssue issue;
+
+    IssueHit(OfflineIssueTracker tracker, Document doc) {
+        this(tracker,doc,Float.NaN);
+    }
+
+    IssueHit(OfflineIssueTracker tracker, Document doc, float score) {
+        this.tracker = tracker;
+        this.score = score;
+        this.id = Integer.parseInt(doc.get("id"));
+        this.type = toEnum(IssueType.class,doc.get("type"));
+        this.priority = toEnum(Priority.class,doc.get("priority"));
+        this.status = toEnum(IssueStatus.class,doc.get("status"));
+        this.resolution = toEnum(IssueResolution.class,doc.get("resolution"));
+        this.subComponent = doc.get("subcomponent");
+        String v = doc.get("votes");
+        this.votes = v==null ? 0 : Integer.parseInt(v);
+        this.summary = IssueDocument.getStoredString(doc,"summary");
+    }
+
+    /**
+     * The search index stores enum constants in the lower case.
+     */
+    private static <E extends Enum<E>> E toEnum(Class<E> type, String value) {
+        if(value==null) return null;
+        return Enum.valueOf(type,value.toUpperCase());
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public IssueType getType() {
+        return type;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public IssueStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return null if the issue is not resolved.
+     */
+    public IssueResolution getResolution() {
+        return resolution;
+    }
+
+    public String getSubComponent() {
+        return subComponent;
+    }
+
+    public int getVotes() {
+        return votes;
+    }
+
+    public String getShortDescription() {
+        return summary;
+    }
+
+    /**
+     * Relevance score of this hit, if it came from {@link OfflineIssueTracker#rank(String, IssueFilter, int)}.
+     * Otherwise {@link Float#NaN}.
+     */
+    public float getScore() {
+        return score;
+    }
+
+    public OfflineIssueTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Loads the full issue.
+     */
+    public JNIssue getIssue() throws ProcessingException {
+        JNIssue i = issue;
+        if(i==null)
+            issue = i = tracker.get(id);
+        return i;
+    }
+
+    public String toString() {
+        return "#"+id+" "+summary;
+    }
+}
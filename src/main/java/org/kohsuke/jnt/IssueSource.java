@@ -0,0 +1,32 @@
+package org.kohsuke.jnt;
+
+import java.util.Date;
+
+/**
+ * Where {@link OfflineIssueTracker#refreshAndIndex(IssueSource)} fetches issues from.
+ *
+ * <p>
+ * The normal implementation is {@link JavaNetIssueSource}, but this also allows
+ * the refresh to be driven from a local stub.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public interface IssueSource {
+    /**
+     * Receives the fetched issues.
+     */
+    interface Sink {
+        /**
+         * Blocks when the downstream can't keep up.
+         */
+        void add(JNIssue issue) throws InterruptedException;
+    }
+
+    /**
+     * Fetches issues and passes them to the sink as they arrive.
+     *
+     * @param since
+     *      Fetch issues updated since this time, or null to fetch all the issues.
+     */
+    void fetch(Date since, Sink sink) throws ProcessingException, InterruptedException;
+}
@@ -0,0 +1,51 @@
+package org.kohsuke.jnt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persists the issues of one project on the disk, in their XML form.
+ *
+ * <p>
+ * {@link OfflineIssueTracker} takes care of parsing, so the store only deals with bytes.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see XmlFileStore
+ * @see SegmentStore
+ */
+public interface IssueStore {
+    /**
+     * Lists up the IDs of the issues in this store.
+     */
+    Set<Integer> list() throws IOException;
+
+    /**
+     * Opens the XML of the given issue.
+     *
+     * @return
+     *      null if no such issue is stored.
+     */
+    InputStream read(int id) throws IOException;
+
+    /**
+     * Stores the given issues, replacing the older copies if any.
+     *
+     * <p>
+     * Each issue is replaced atomically, so a crash in the middle of it leaves
+     * either the old copy or the new copy, but never a partially written one.
+     *
+     * @param records
+     *      XML of the issues, as written by {@link JNIssue#save(OutputStream)}, keyed by their IDs.
+     * @param durability
+     *      Controls when the data is forced to the disk.
+     */
+    void write(Map<Integer,byte[]> records, Durability durability) throws IOException;
+
+    /**
+     * Releases resources held by this store.
+     */
+    void close() throws IOException;
+}
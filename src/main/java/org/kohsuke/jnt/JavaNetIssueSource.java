@@ -0,0 +1,27 @@
+package org.kohsuke.jnt;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * {@link IssueSource} that fetches from the java.net issue tracker.
+ *
+ * <p>
+ * {@link JNIssueTracker} only offers bulk retrieval, so the issues are handed
+ * to the sink once the whole response is parsed.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class JavaNetIssueSource implements IssueSource {
+    private final JNIssueTracker tracker;
+
+    public JavaNetIssueSource(JNIssueTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    public void fetch(Date since, Sink sink) throws ProcessingException, InterruptedException {
+        Map<Integer,JNIssue> issues = since==null ? tracker.getAll() : tracker.getUpdatedIssues(since);
+        for (JNIssue issue : issues.values())
+            sink.add(issue);
+    }
+}
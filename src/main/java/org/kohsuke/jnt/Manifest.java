@@ -0,0 +1,183 @@
+package org.kohsuke.jnt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Persisted list of the issues known to {@link OfflineIssueTracker}, along with
+ * the last modified timestamp and the checksum of each issue.
+ *
+ * <p>
+ * This lets the tracker start up without scanning the {@link IssueStore}.
+ * The manifest is rewritten atomically, and if it's missing or unreadable,
+ * it's rebuilt from the store.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class Manifest {
+    static final class Entry {
+        /**
+         * {@link JNIssue#getLastModified()} in milliseconds, or 0 if unknown.
+         */
+        final long lastModified;
+        /**
+         * CRC32 of the issue XML.
+         */
+        final long checksum;
+
+        Entry(long lastModified, long checksum) {
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+
+    private final File file;
+
+    /**
+     * Guarded by this.
+     */
+    private final Map<Integer,Entry> entries = new HashMap<Integer,Entry>();
+
+    private Manifest(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the manifest from the given file, or rebuilds it from the store if that fails.
+     */
+    static Manifest load(File file, IssueStore store) throws IOException {
+        Manifest m = new Manifest(file);
+        if(!m.read()) {
+            LOGGER.info("Rebuilding "+file);
+            m.rebuild(store);
+            m.save(Durability.BATCH);
+        }
+        return m;
+    }
+
+    /**
+     * @return false if the manifest file is missing or corrupted.
+     */
+    private boolean read() {
+        if(!file.exists())
+            return false;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if(in.readInt()!=MAGIC)
+                    return false;
+                int n = in.readInt();
+                for( int i=0; i<n; i++ ) {
+                    int id = in.readInt();
+                    entries.put(id,new Entry(in.readLong(),in.readLong()));
+                }
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            entries.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Recovers the manifest by going through all the issues in the store.
+     * The last modified timestamps are unknown without parsing XMLs, so they are left as 0.
+     */
+    private void rebuild(IssueStore store) throws IOException {
+        byte[] buf = new byte[8192];
+        for (Integer id : store.list()) {
+            InputStream in = store.read(id);
+            if(in==null)    continue;
+            CRC32 crc = new CRC32();
+            try {
+                int len;
+                while((len=in.read(buf))>=0)
+                    crc.update(buf,0,len);
+            } finally {
+                in.close();
+            }
+            entries.put(id,new Entry(0,crc.getValue()));
+        }
+    }
+
+    /**
+     * Atomically rewrites the manifest file.
+     */
+    synchronized void save(Durability durability) throws IOException {
+        File tmp = new File(file.getPath()+".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+            for (Map.Entry<Integer,Entry> e : entries.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeLong(e.getValue().lastModified);
+                out.writeLong(e.getValue().checksum);
+            }
+            out.flush();
+            if(durability!=Durability.NONE)
+                fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        FileUtil.rename(tmp,file);
+    }
+
+    synchronized Entry get(int id) {
+        return entries.get(id);
+    }
+
+    synchronized void put(int id, long lastModified, byte[] xml) {
+        entries.put(id,new Entry(lastModified,checksum(xml)));
+    }
+
+    /**
+     * Checks if the given issue XML is identical to what's already in the store,
+     * by comparing the timestamp and the checksum.
+     *
+     * <p>
+     * The timestamp alone isn't enough, since some changes (like votes) don't update it.
+     * If the timestamp is unknown because the manifest was rebuilt, it's recorded here.
+     */
+    synchronized boolean isUnchanged(int id, long lastModified, byte[] xml) {
+        Entry e = entries.get(id);
+        if(e==null || (e.lastModified!=0 && e.lastModified!=lastModified) || e.checksum!=checksum(xml))
+            return false;
+        if(e.lastModified==0)
+            entries.put(id,new Entry(lastModified,e.checksum));
+        return true;
+    }
+
+    /**
+     * IDs of all the known issues.
+     */
+    synchronized Set<Integer> ids() {
+        return new HashSet<Integer>(entries.keySet());
+    }
+
+    static long checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static final int MAGIC = 0x4f49544d; // "OITM"
+
+    private static final Logger LOGGER = Logger.getLogger(Manifest.class.getName());
+}
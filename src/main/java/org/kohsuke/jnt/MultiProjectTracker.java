@@ -0,0 +1,227 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.util.ReaderUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Operates on the {@link OfflineIssueTracker}s of multiple projects at once.
+ *
+ * <p>
+ * Each project keeps its own store and search index. Refreshing runs the projects
+ * concurrently, and searching combines their indexes through a {@link MultiReader},
+ * so that one query returns one sorted list of hits from all the projects.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class MultiProjectTracker {
+    private final List<OfflineIssueTracker> trackers;
+
+    /**
+     * Receives the progress of {@link MultiProjectTracker#refresh(int, RefreshListener)}.
+     * Methods are called from the refreshing threads, so implementations need to be thread-safe.
+     */
+    public interface RefreshListener {
+        void onStarted(OfflineIssueTracker tracker);
+        void onCompleted(OfflineIssueTracker tracker, RefreshStats stats, long millis);
+        void onFailed(OfflineIssueTracker tracker, Throwable cause);
+    }
+
+    public MultiProjectTracker(Collection<OfflineIssueTracker> trackers) {
+        this.trackers = Collections.unmodifiableList(new ArrayList<OfflineIssueTracker>(trackers));
+    }
+
+    public List<OfflineIssueTracker> getTrackers() {
+        return trackers;
+    }
+
+    /**
+     * Refreshes and indexes all the projects, running up to the given number of them at once.
+     * A failure in one project doesn't stop the others.
+     *
+     * @return
+     *      total number of issues that were changed.
+     * @throws ProcessingException
+     *      if any of the projects failed to refresh, after all the others are done.
+     */
+    public int refresh(int threads, final RefreshListener listener) throws ProcessingException, IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads,new DaemonThreadFactory("project refresher"));
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (final OfflineIssueTracker oit : trackers) {
+                futures.add(pool.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        listener.onStarted(oit);
+                        long start = System.currentTimeMillis();
+                        try {
+                            RefreshStats r = oit.refreshAndIndex();
+                            listener.onCompleted(oit,r,System.currentTimeMillis()-start);
+                            return r.getChanged();
+                        } catch (Exception e) {
+                            listener.onFailed(oit,e);
+                            throw e;
+                        } catch (Error e) {
+                            listener.onFailed(oit,e);
+                            throw e;
+                        }
+                    }
+                }));
+            }
+
+            int total = 0;
+            int failed = 0;
+            Throwable cause = null;
+            for (Future<Integer> f : futures) {
+                try {
+                    total += f.get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    if(cause==null)
+                        cause = e.getCause();
+                }
+            }
+            if(cause!=null)
+                throw (ProcessingException)new ProcessingException("Failed to refresh "+failed+" of "+trackers.size()+" projects").initCause(cause);
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Searches all the projects with one query and returns one page of the merged hits.
+     *
+     * <p>
+     * Unlike {@link OfflineIssueTracker#find(String, IssueFilter, String, int, int)},
+     * the hits are sorted by the values in the indexes rather than the per-project sort columns,
+     * and the results are not cached.
+     */
+    public SearchResult find(String queryString, IssueFilter filter, final String sortField, final int offset, final int limit) throws ParseException, IOException {
+        if(trackers.isEmpty())
+            return new SearchResult(0,offset,Collections.<IssueHit>emptyList());
+
+        final Query query = trackers.get(0).createParser().parse(queryString);
+        LOGGER.fine("Searching "+query+" in "+trackers.size()+" projects");
+
+        return search(filter,new Search() {
+            SearchResult run(IndexSearcher searcher, Filter filter) throws IOException {
+                int n = (int)Math.min((long)offset+limit,searcher.maxDoc());
+                TopFieldDocs docs = searcher.search(query,filter,Math.max(1,n),SortColumns.parseSort(sortField,null));
+                List<IssueHit> hits = new ArrayList<IssueHit>();
+                for( int i=offset; i<docs.scoreDocs.length && i<n; i++ )
+                    hits.add(hit(docs.scoreDocs[i].doc,Float.NaN));
+                return new SearchResult(docs.totalHits,offset,hits);
+            }
+        });
+    }
+
+    /**
+     * Finds the k issues that are the most relevant to the query across all the projects,
+     * from the best to the worst.
+     *
+     * <p>
+     * The term statistics come from all the indexes combined, so the scores are comparable
+     * between the projects. The boosts are those of the first project.
+     *
+     * @see OfflineIssueTracker#rank(String, IssueFilter, int, float)
+     */
+    public SearchResult rank(String queryString, IssueFilter filter, final int k, final float strongMatchRatio) throws ParseException, IOException {
+        OfflineIssueTracker.checkStrongMatchRatio(strongMatchRatio);
+        if(trackers.isEmpty())
+            return new SearchResult(0,0,Collections.<IssueHit>emptyList());
+
+        final Query query = trackers.get(0).createRankingParser().parse(queryString);
+        LOGGER.fine("Ranking "+query+" in "+trackers.size()+" projects");
+
+        return search(filter,new Search() {
+            SearchResult run(IndexSearcher searcher, Filter filter) throws IOException {
+                float strongScore = 0;
+                if(strongMatchRatio>0)
+                    strongScore = strongMatchRatio*RankCollector.perfectScore(searcher,query);
+                RankCollector collector = new RankCollector(Math.max(1,k),strongScore);
+                collector.search(searcher,query,filter);
+                List<IssueHit> hits = new ArrayList<IssueHit>();
+                for (ScoreDoc sd : collector.getTopDocs())
+                    hits.add(hit(sd.doc,sd.score));
+                return new SearchResult(collector.getTotalHits(),0,hits,collector.isTerminatedEarly());
+            }
+        });
+    }
+
+    /**
+     * Search run against the indexes of all the projects combined.
+     */
+    private abstract class Search {
+        private IndexReader[] readers;
+        private int[] starts;
+
+        abstract SearchResult run(IndexSearcher searcher, Filter filter) throws IOException;
+
+        /**
+         * Turns a document number of the combined index into a hit of its project.
+         */
+        IssueHit hit(int doc, float score) throws IOException {
+            int sub = ReaderUtil.subIndex(doc,starts);
+            return new IssueHit(trackers.get(sub),readers[sub].document(doc-starts[sub],OfflineIssueTracker.HIT_FIELDS),score);
+        }
+    }
+
+    private SearchResult search(IssueFilter filter, Search s) throws IOException {
+        List<IndexSearcher> searchers = new ArrayList<IndexSearcher>();
+        try {
+            for (OfflineIssueTracker oit : trackers)
+                searchers.add(oit.acquireSearcher());
+
+            s.readers = new IndexReader[searchers.size()];
+            s.starts = new int[s.readers.length];
+            int maxDoc = 0;
+            for( int i=0; i<s.readers.length; i++ ) {
+                s.readers[i] = searchers.get(i).getIndexReader();
+                s.starts[i] = maxDoc;
+                maxDoc += s.readers[i].maxDoc();
+            }
+
+            // the sub-readers are owned by the searchers, so closing the multi reader only releases its references
+            MultiReader reader = new MultiReader(s.readers,false);
+            try {
+                return s.run(new IndexSearcher(reader),filter.filter);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            for( int i=0; i<searchers.size(); i++ )
+                trackers.get(i).releaseSearcher(searchers.get(i));
+        }
+    }
+
+    /**
+     * Closes all the trackers.
+     */
+    public void close() throws IOException {
+        for (OfflineIssueTracker oit : trackers)
+            oit.close();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(MultiProjectTracker.class.getName());
+}
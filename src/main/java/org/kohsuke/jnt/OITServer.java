@@ -0,0 +1,184 @@
+package org.kohsuke.jnt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-running daemon that keeps {@link OfflineIssueTracker}s warm in memory
+ * and executes {@link OITShell} commands on behalf of thin clients.
+ *
+ * <p>
+ * This saves the JVM startup, the directory scan, and the search index opening
+ * from every query. The server only listens on the loopback interface.
+ *
+ * <p>
+ * The protocol is simple. The client sends the number of arguments followed by
+ * the arguments themselves (via {@link DataOutputStream#writeUTF(String)}), and
+ * the server sends back the output of the command until it closes the connection.
+ *
+ * <p>
+ * Commands run concurrently. Those that update a project take turns on its tracker
+ * (see {@link OfflineIssueTracker}), while searches go on.
+ * Interactive commands like 'shell' are rejected.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class OITServer {
+    private final ServerSocket socket;
+
+    /**
+     * Trackers that are already open, keyed by the project name. Guarded by itself.
+     */
+    private final Map<String,OfflineIssueTracker> trackers = new HashMap<String,OfflineIssueTracker>();
+
+    private final ExecutorService workers = Executors.newCachedThreadPool(new DaemonThreadFactory("oit server"));
+
+    private JavaNet javaNet;
+
+    public OITServer(int port) throws IOException {
+        socket = new ServerSocket(port,50,InetAddress.getByName(null));
+    }
+
+    /**
+     * Usage: serve [-port N]
+     */
+    public static void main(List<String> args) throws IOException {
+        int port = DEFAULT_PORT;
+        if(!args.isEmpty() && args.get(0).equals("-port"))
+            port = Integer.parseInt(args.get(1));
+        OITServer server = new OITServer(port);
+        System.out.println("Listening on port "+port);
+        server.run();
+    }
+
+    /**
+     * Accepts connections until the server socket is closed.
+     */
+    public void run() throws IOException {
+        while(true) {
+            final Socket s = socket.accept();
+            workers.submit(new Runnable() {
+                public void run() {
+                    try {
+                        serve(s);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to serve a client", e);
+                    } finally {
+                        try {
+                            s.close();
+                        } catch (IOException e) {
+                            // ignore
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void serve(Socket s) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        List<String> args = new ArrayList<String>();
+        int n = in.readInt();
+        for( int i=0; i<n; i++ )
+            args.add(in.readUTF());
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(s.getOutputStream()));
+        if(!args.isEmpty() && INTERACTIVE_COMMANDS.contains(args.get(0))) {
+            // it would read from and write to the console of the server, not the client
+            out.println("ERROR: "+args.get(0)+" can't be run remotely");
+            out.flush();
+            return;
+        }
+        try {
+            new OITShell(out) {
+                protected OfflineIssueTracker getTracker(String projectName) throws ProcessingException, IOException {
+                    return OITServer.this.getTracker(projectName);
+                }
+            }.execute(args);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Command failed: "+args, e);
+            out.println("ERROR: "+e);
+        }
+        out.flush();
+    }
+
+    /**
+     * Obtains the tracker for the given project, opening it on the first use.
+     */
+    OfflineIssueTracker getTracker(String projectName) throws ProcessingException, IOException {
+        synchronized (trackers) {
+            OfflineIssueTracker oit = trackers.get(projectName);
+            if(oit==null) {
+                if(javaNet==null)
+                    javaNet = JavaNet.connectAnonymously();
+                oit = new OfflineIssueTracker(javaNet.getProject(projectName));
+                trackers.put(projectName,oit);
+            }
+            return oit;
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes all the trackers.
+     */
+    public void close() throws IOException {
+        socket.close();
+        workers.shutdown();
+        synchronized (trackers) {
+            for (OfflineIssueTracker oit : trackers.values())
+                oit.close();
+            trackers.clear();
+        }
+    }
+
+    /**
+     * Sends the command to the server running on this machine and copies its output.
+     */
+    public static void execute(int port, List<String> args, OutputStream output) throws IOException {
+        Socket s = new Socket(InetAddress.getByName(null),port);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            out.writeInt(args.size());
+            for (String arg : args)
+                out.writeUTF(arg);
+            out.flush();
+
+            InputStream in = s.getInputStream();
+            byte[] buf = new byte[8192];
+            int len;
+            while((len=in.read(buf))>=0)
+                output.write(buf,0,len);
+            output.flush();
+        } finally {
+            s.close();
+        }
+    }
+
+    public static final int DEFAULT_PORT = 7531;
+
+    /**
+     * Commands that need the console of the client.
+     */
+    private static final Set<String> INTERACTIVE_COMMANDS = Collections.singleton("shell");
+
+    private static final Logger LOGGER = Logger.getLogger(OITServer.class.getName());
+}
@@ -1,13 +1,19 @@
 package org.kohsuke.jnt;
 
+import jline.CandidateListCompletionHandler;
+import jline.ConsoleReader;
+import jline.History;
+import org.apache.lucene.document.Field.TermVector;
 import org.apache.lucene.queryParser.ParseException;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Text-based shell for accessing offline issue tracker capability.
@@ -15,54 +21,198 @@ import java.util.List;
  * @author Kohsuke Kawaguchi
  */
 public class OITShell {
+    /**
+     * Where the output goes.
+     */
+    protected final PrintStream out;
+
+    public OITShell(PrintStream out) {
+        this.out = out;
+    }
+
     public static void main(String[] args) throws Exception {
-        List<String> argsList = Arrays.asList(args).subList(1,args.length);
+        List<String> argsList = Arrays.asList(args);
+
+        if(argsList.get(0).equals("serve")) {
+            OITServer.main(argsList.subList(1,argsList.size()));
+            return;
+        }
+
+        if(argsList.get(0).equals("-remote")) {
+            // thin client mode. let the server do the work
+            argsList = argsList.subList(1,argsList.size());
+            int port = OITServer.DEFAULT_PORT;
+            if(argsList.get(0).equals("-port")) {
+                port = Integer.parseInt(argsList.get(1));
+                argsList = argsList.subList(2,argsList.size());
+            }
+            OITServer.execute(port,argsList,System.out);
+            return;
+        }
+
+        new OITShell(System.out).execute(argsList);
+    }
+
+    /**
+     * Executes one command.
+     */
+    public void execute(List<String> args) throws Exception {
+        List<String> argsList = args.subList(1,args.size());
+        String cmd = args.get(0);
 
-        if(args[0].equals("refresh")) {
+        if(cmd.equals("refresh")) {
             refresh(argsList);
         }
 
-        if(args[0].equals("search")) {
+        if(cmd.equals("search")) {
             search(argsList);
         }
 
-        if(args[0].equals("list")) {
+        if(cmd.equals("list")) {
             list(argsList);
         }
+
+        if(cmd.equals("similar")) {
+            similar(argsList);
+        }
+
+        if(cmd.equals("duplicates")) {
+            duplicates(argsList);
+        }
+
+        if(cmd.equals("facets")) {
+            facets(argsList);
+        }
+
+        if(cmd.equals("index")) {
+            index(argsList);
+        }
+
+        if(cmd.equals("migrate")) {
+            migrate(argsList);
+        }
+
+        if(cmd.equals("shell")) {
+            shell(argsList);
+        }
     }
 
-    private static void refresh(List<String> argsList) throws ProcessingException, IOException {
-        OfflineIssueTracker oit = new OfflineIssueTracker(JavaNet.connectAnonymously().getProject(argsList.get(0)));
-        System.out.println("Fetching updates");
-        oit.refresh();
-        System.out.println("Updating search index");
-        oit.buildSearchIndex();
+    /**
+     * Obtains the tracker for the given project.
+     */
+    protected OfflineIssueTracker getTracker(String projectName) throws ProcessingException, IOException {
+        return new OfflineIssueTracker(JavaNet.connectAnonymously().getProject(projectName));
     }
 
-    private static void search(List<String> argsList) throws ProcessingException, IOException, ParseException {
+    /**
+     * Usage: refresh [-threads N] PROJECT...
+     */
+    private void refresh(List<String> argsList) throws ProcessingException, IOException {
+        int threads = DEFAULT_REFRESH_THREADS;
+        if(argsList.get(0).equals("-threads")) {
+            threads = Integer.parseInt(argsList.get(1));
+            argsList = argsList.subList(2,argsList.size());
+        }
+
+        if(argsList.size()==1) {
+            OfflineIssueTracker oit = getTracker(argsList.get(0));
+            out.println("Fetching updates");
+            RefreshStats r = oit.refreshAndIndex();
+            out.printf("Updated %d issues (%s)\n",r.getChanged(),r);
+            return;
+        }
+
+        MultiProjectTracker multi = getTrackers(argsList);
+        out.printf("Fetching updates of %d projects\n",argsList.size());
+        int n = multi.refresh(threads,new MultiProjectTracker.RefreshListener() {
+            public void onStarted(OfflineIssueTracker tracker) {
+                out.printf("%s: fetching updates\n",tracker.project.getName());
+            }
+
+            public void onCompleted(OfflineIssueTracker tracker, RefreshStats stats, long millis) {
+                out.printf("%s: %s (%dms)\n",tracker.project.getName(),stats,millis);
+            }
+
+            public void onFailed(OfflineIssueTracker tracker, Throwable cause) {
+                out.printf("%s: failed: %s\n",tracker.project.getName(),cause);
+            }
+        });
+        out.printf("Updated %d issues\n",n);
+    }
+
+    private MultiProjectTracker getTrackers(Collection<String> projectNames) throws ProcessingException, IOException {
+        List<OfflineIssueTracker> trackers = new ArrayList<OfflineIssueTracker>();
+        for (String name : projectNames)
+            trackers.add(getTracker(name));
+        return new MultiProjectTracker(trackers);
+    }
+
+    /**
+     * Usage: search [-all] [-rank [K] [-strong S] | -sort FIELD[,FIELD...]] PROJECT[,PROJECT...] QUERY
+     *
+     * <p>
+     * With -strong, the ranked search stops once K hits score at least S (0 to 1) of a perfect match.
+     */
+    private void search(List<String> argsList) throws ProcessingException, IOException, ParseException {
         boolean all = false;
         String sortBy = "id";
+        int rank = 0;
+        float strong = 0;
         if(argsList.get(0).equals("-all")) {
             all = true;
             argsList = argsList.subList(1,argsList.size());
         }
+        if(argsList.get(0).equals("-rank")) {
+            rank = DEFAULT_RANK_HITS;
+            argsList = argsList.subList(1,argsList.size());
+            if(argsList.get(0).matches("[0-9]+")) {
+                rank = Integer.parseInt(argsList.get(0));
+                argsList = argsList.subList(1,argsList.size());
+            }
+            if(argsList.get(0).equals("-strong")) {
+                strong = Float.parseFloat(argsList.get(1));
+                argsList = argsList.subList(2,argsList.size());
+            }
+        }
         if(argsList.get(0).equals("-sort")) {
             sortBy = argsList.get(1);
             argsList = argsList.subList(2,argsList.size());
         }
         String projectName = argsList.get(0);
-        OfflineIssueTracker oit = new OfflineIssueTracker(JavaNet.connectAnonymously().getProject(projectName));
-
-        List<JNIssue> hits = oit.search(join(argsList.subList(1,argsList.size())),sortBy);
-        if(!all) {
-            List<JNIssue> newList = new ArrayList<JNIssue>();
-            for (JNIssue hit : hits) {
-                if(hit.getResolution()==null)
-                    newList.add(hit);
-            }
-            hits = newList;
+        String query = join(argsList.subList(1,argsList.size()));
+
+        IssueFilter filter = all ? IssueFilter.ALL : IssueFilter.UNRESOLVED;
+        if(projectName.indexOf(',')>=0) {
+            // search across projects
+            MultiProjectTracker multi = getTrackers(Arrays.asList(projectName.split(",")));
+            if(rank>0)
+                print(multi.rank(query,filter,rank,strong));
+            else
+                print(multi.find(query,filter,sortBy,0,Integer.MAX_VALUE).getHits());
+            return;
         }
-        print(hits);
+
+        OfflineIssueTracker oit = getTracker(projectName);
+        if(rank>0)
+            print(oit.rank(query,filter,rank,strong));
+        else
+            search(oit, all, sortBy, query);
+    }
+
+    private void search(OfflineIssueTracker oit, boolean all, String sortBy, String query) throws IOException, ParseException {
+        print(oit.find(query,all?IssueFilter.ALL:IssueFilter.UNRESOLVED,sortBy,0,Integer.MAX_VALUE).getHits());
+    }
+
+    private void rank(OfflineIssueTracker oit, boolean all, int k, String query) throws IOException, ParseException {
+        print(oit.rank(query,all?IssueFilter.ALL:IssueFilter.UNRESOLVED,k));
+    }
+
+    /**
+     * Prints the hits of a ranked search, followed by how many there were.
+     */
+    private void print(SearchResult r) {
+        print(r.getHits());
+        out.printf("best %d of %s%d matches\n",r.getHits().size(),r.isTerminatedEarly()?"at least ":"",r.getTotalHits());
     }
 
     private static String join(Collection col) {
@@ -74,11 +224,11 @@ public class OITShell {
         return buf.toString();
     }
 
-    private static void print(List<JNIssue> hits) {
+    private void print(List<IssueHit> hits) {
         int subComponentWidth = maxSubComponentLen(hits);
-        for (JNIssue issue : hits) {
+        for (IssueHit issue : hits) {
             int votes = issue.getVotes();
-            System.out.printf("%s#%-4s %s %s %s\t%-" + subComponentWidth + "s %s%s%s\n",
+            out.printf("%s#%-4s %s %s %s\t%-" + subComponentWidth + "s %s%s%s\n",
                     color(issue),
                     issue.getId(),
                     issue.getType().name().toUpperCase().substring(0, 3),
@@ -88,40 +238,205 @@ public class OITShell {
                     votes == 0 ? "" : "(" + votes + " votes) ",
                     issue.getShortDescription(),
                     REVERT);
-            System.out.printf("      https://%s.dev.java.net/issues/show_bug.cgi?id=%s\n\n",
-                    issue.getProject().getName(),
+            if(!Float.isNaN(issue.getScore()))
+                out.printf("      score %.3f\n",issue.getScore());
+            out.printf("      https://%s.dev.java.net/issues/show_bug.cgi?id=%s\n\n",
+                    issue.getTracker().project.getName(),
                     issue.getId());
         }
-        System.out.printf("%d hits\n",hits.size());
+        out.printf("%d hits\n",hits.size());
     }
 
     /**
      * List unresolved items.
      */
-    private static void list(List<String> argsList) throws ProcessingException, IOException {
-        OfflineIssueTracker oit = new OfflineIssueTracker(JavaNet.connectAnonymously().getProject(argsList.get(0)));
-        List<JNIssue> all = oit.getAll();
-        for (Iterator<JNIssue> itr = all.iterator(); itr.hasNext();) {
-            JNIssue issue = itr.next();
-            if(!issue.getStatus().needsWork)
-                itr.remove();
+    private void list(List<String> argsList) throws ProcessingException, IOException {
+        OfflineIssueTracker oit = getTracker(argsList.get(0));
+        print(oit.list(IssueFilter.NEEDS_WORK,"id",0,Integer.MAX_VALUE).getHits());
+    }
+
+    /**
+     * Usage: similar [-all] PROJECT ID [K]
+     */
+    private void similar(List<String> argsList) throws ProcessingException, IOException {
+        boolean all = false;
+        if(argsList.get(0).equals("-all")) {
+            all = true;
+            argsList = argsList.subList(1,argsList.size());
+        }
+        OfflineIssueTracker oit = getTracker(argsList.get(0));
+        int id = Integer.parseInt(argsList.get(1));
+        int k = argsList.size()>2 ? Integer.parseInt(argsList.get(2)) : DEFAULT_RANK_HITS;
+
+        SearchResult r = oit.similar(id,all?IssueFilter.ALL:IssueFilter.UNRESOLVED,k);
+        print(r.getHits());
+        out.printf("best %d of %d similar issues\n",r.getHits().size(),r.getTotalHits());
+    }
+
+    /**
+     * Usage: duplicates PROJECT [THRESHOLD]
+     */
+    private void duplicates(List<String> argsList) throws ProcessingException, IOException {
+        OfflineIssueTracker oit = getTracker(argsList.get(0));
+        float threshold = argsList.size()>1 ? Float.parseFloat(argsList.get(1)) : OfflineIssueTracker.DEFAULT_DUPLICATE_THRESHOLD;
+
+        List<List<Integer>> clusters = oit.findDuplicates(threshold);
+        for (List<Integer> c : clusters) {
+            JNIssue first = oit.get(c.get(0));
+            out.printf("%s\t%s\n",join(c),first==null?"":first.getShortDescription());
+        }
+        out.printf("%d groups of duplicates\n",clusters.size());
+    }
+
+    /**
+     * Counts the issues by component, status, and so on.
+     */
+    private void facets(List<String> argsList) throws ProcessingException, IOException, ParseException {
+        boolean all = false;
+        if(argsList.get(0).equals("-all")) {
+            all = true;
+            argsList = argsList.subList(1,argsList.size());
+        }
+        OfflineIssueTracker oit = getTracker(argsList.get(0));
+        String query = join(argsList.subList(1,argsList.size()));
+
+        FacetResult r = oit.facets(query,all?IssueFilter.ALL:IssueFilter.UNRESOLVED,OfflineIssueTracker.FACET_FIELDS);
+        for (String field : r.getFields()) {
+            out.println(field+":");
+            for (Map.Entry<String,Integer> e : r.getCounts(field).entrySet())
+                out.printf("  %-20s %5d\n",e.getKey(),e.getValue());
+            out.println();
+        }
+        out.printf("%d hits\n",r.getTotalHits());
+    }
+
+    /**
+     * Interactive shell that runs queries against one project.
+     * The tracker and its searcher stay open across queries.
+     */
+    private void shell(List<String> argsList) throws ProcessingException, IOException {
+        OfflineIssueTracker oit = getTracker(argsList.get(0));
+
+        ConsoleReader r = new ConsoleReader();
+        r.setHistory(new History(new File(System.getProperty("user.home"),".bokobai_history")));
+        r.addCompletor(new QueryCompletor(oit));
+        CandidateListCompletionHandler ch = new CandidateListCompletionHandler();
+        ch.setAlwaysIncludeNewline(false);
+        r.setCompletionHandler(ch);
+
+        out.println("Enter a query, optionally preceded by -all and/or -sort FIELD[,FIELD...] (prefix a field with - to reverse)");
+        out.println("or -rank to list the best "+DEFAULT_RANK_HITS+" matches. Ctrl+D to exit.");
+        String line;
+        while((line=r.readLine(oit.project.getName()+"> "))!=null) {
+            line = line.trim();
+            if(line.length()==0)    continue;
+
+            boolean all = false;
+            String sortBy = "id";
+            boolean rank = false;
+            if(line.startsWith("-all ")) {
+                all = true;
+                line = line.substring(5).trim();
+            }
+            if(line.startsWith("-rank ")) {
+                rank = true;
+                line = line.substring(6).trim();
+            }
+            if(line.startsWith("-sort ")) {
+                line = line.substring(6).trim();
+                int idx = line.indexOf(' ');
+                if(idx<0)   continue;
+                sortBy = line.substring(0,idx);
+                line = line.substring(idx+1).trim();
+            }
+
+            try {
+                long start = System.currentTimeMillis();
+                if(rank)
+                    rank(oit,all,DEFAULT_RANK_HITS,line);
+                else
+                    search(oit,all,sortBy,line);
+                out.printf("(%dms)\n",System.currentTimeMillis()-start);
+            } catch (ParseException e) {
+                out.println(e.getMessage());
+            }
+        }
+        out.println();
+        out.println(oit.getQueryCache());
+    }
+
+    /**
+     * Usage: index [-threads N] [-ram MB] [-compress] [-maxchars N] [-vectors] [-report] PROJECT
+     */
+    private void index(List<String> argsList) throws ProcessingException, IOException {
+        boolean reportOnly = false;
+        OfflineIssueTracker oit = getTracker(argsList.get(argsList.size()-1));
+        // the tracker may be shared with other clients of OITServer, so the settings only apply to this build
+        int threads = oit.getIndexThreads();
+        double ram = oit.getRamBufferSizeMB();
+        IndexOptions options = oit.getIndexOptions();
+        while(argsList.get(0).startsWith("-")) {
+            String opt = argsList.get(0);
+            argsList = argsList.subList(1,argsList.size());
+            if(opt.equals("-compress"))
+                options.setCompressStoredFields(true);
+            if(opt.equals("-vectors"))
+                options.setTermVector(TermVector.WITH_POSITIONS_OFFSETS);
+            if(opt.equals("-report"))
+                reportOnly = true;
+            if(opt.equals("-threads") || opt.equals("-ram") || opt.equals("-maxchars")) {
+                String v = argsList.get(0);
+                argsList = argsList.subList(1,argsList.size());
+                if(opt.equals("-threads"))
+                    threads = Integer.parseInt(v);
+                if(opt.equals("-ram"))
+                    ram = Double.parseDouble(v);
+                if(opt.equals("-maxchars"))
+                    options.setMaxAnalyzedChars(Integer.parseInt(v));
+            }
+        }
+
+        if(!reportOnly) {
+            out.printf("Rebuilding the search index with %d threads (%s)\n",threads,options);
+            long start = System.currentTimeMillis();
+            oit.buildSearchIndex(threads,ram,options);
+            out.printf("Took %dms\n",System.currentTimeMillis()-start);
         }
-        print(all);
+        out.print(oit.getIndexSizeReport());
     }
 
-    private static int maxSubComponentLen(List<JNIssue> hits) {
+    /**
+     * Moves the local copy of issues into the compact segment store.
+     */
+    private void migrate(List<String> argsList) throws ProcessingException, IOException {
+        OfflineIssueTracker oit = getTracker(argsList.get(0));
+        out.println("Migrating to the segment store");
+        oit.migrateToSegmentStore();
+    }
+
+    private static int maxSubComponentLen(List<IssueHit> hits) {
         int len = 0;
-        for (JNIssue issue : hits)
+        for (IssueHit issue : hits)
             len = Math.max(len,issue.getSubComponent().length());
         return len;
     }
 
+    /**
+     * Number of hits shown by search -rank.
+     */
+    private static final int DEFAULT_RANK_HITS = 10;
+
+    /**
+     * Number of projects refreshed at once.
+     */
+    private static final int DEFAULT_REFRESH_THREADS = 4;
+
     /**
      * Reverts the color
      */
     private static final String REVERT = "\u001B[m";
 
-    private static String color(JNIssue issue) {
+    private static String color(IssueHit issue) {
         StringBuilder buf = new StringBuilder();
         buf.append("\u001B[");
 
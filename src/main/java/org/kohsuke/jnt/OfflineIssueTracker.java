@@ -1,39 +1,66 @@
 package org.kohsuke.jnt;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexFormatTooOldException;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser.Operator;
-import org.apache.lucene.search.Hits;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.ReaderUtil;
 import org.kohsuke.jnt.lucene.QueryParser2;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Local copy of the issues of one project, along with its search index.
+ *
+ * <p>
+ * Searches can run concurrently with each other and with updates. The methods that update
+ * the local copy or the search index synchronize on the tracker, so that concurrent updates
+ * take turns instead of failing to obtain the index lock or writing the same files.
+ *
  * @author Kohsuke Kawaguchi
  */
 public class OfflineIssueTracker {
@@ -44,81 +71,216 @@ public class OfflineIssueTracker {
      */
     private final File home;
 
-    private Set<Integer> issueList;
-    private final Map<Integer,JNIssue> cache = new Hashtable<Integer,JNIssue>();
+    /**
+     * Known issues, so that we don't need to scan the store at startup.
+     */
+    private final Manifest manifest;
+
+    private final SearcherManager searchers;
+
+    /**
+     * Lucene search index in {@link #getIndexDir()}.
+     */
+    private final Directory indexDirectory;
+
+    /**
+     * Values to sort the search results by, maintained along with the search index.
+     */
+    private final SortColumns columns;
+
+    /**
+     * Set to true once the search index is known to be in the current format.
+     */
+    private volatile boolean indexVerified;
+    private final IssueCache cache = new IssueCache(DEFAULT_CACHE_SIZE);
+
+    private final QueryCache queryCache = new QueryCache(DEFAULT_QUERY_CACHE_DOCS);
 
-    public OfflineIssueTracker(JNProject project) {
+    private volatile int loaderThreads = Runtime.getRuntime().availableProcessors();
+
+    private volatile int indexThreads = Runtime.getRuntime().availableProcessors();
+
+    private volatile double ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+
+    private volatile int mergeFactor = DEFAULT_MERGE_FACTOR;
+
+    private volatile IndexOptions indexOptions = new IndexOptions();
+
+    private volatile float summaryBoost = DEFAULT_SUMMARY_BOOST;
+
+    private volatile float contentsBoost = 1;
+
+    private volatile float strongMatchRatio;
+
+    private volatile Durability durability = Durability.BATCH;
+
+    /**
+     * Where the issue XMLs are persisted.
+     */
+    private volatile IssueStore store;
+
+    /**
+     * Parses the issue XML from the disk when it's not in {@link #cache}.
+     */
+    private final IssueCache.Loader loader = new IssueCache.Loader() {
+        public JNIssue load(int id) throws ProcessingException {
+            try {
+                InputStream in = openStored(id);
+                if(in==null)
+                    return null;
+                try {
+                    return project.getIssueTracker().load(id,in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new ProcessingException(e);
+            }
+        }
+    };
+
+    /**
+     * Opens the XML of the given issue in {@link #store}, or returns null if it's not there.
+     *
+     * <p>
+     * {@link #migrateToSegmentStore()} deletes the XML files after switching to the new store,
+     * so a read that started on the old store can lose its file. It is then retried on the new one.
+     */
+    private InputStream openStored(int id) throws IOException {
+        while(true) {
+            IssueStore s = store;
+            try {
+                InputStream in = s.read(id);
+                if(in!=null || s==store)
+                    return in;
+            } catch (IOException e) {
+                if(s==store)
+                    throw e;
+            }
+        }
+    }
+
+    public OfflineIssueTracker(JNProject project) throws IOException {
         this(new File(new File(System.getProperty("user.home")),".java.net.offline-issue-tracker"),project);
     }
 
-    public OfflineIssueTracker(File home, JNProject project) {
+    public OfflineIssueTracker(File home, JNProject project) throws IOException {
         this.project = project;
         this.home = new File(home,project.getName());
         this.home.mkdirs();
-        issueList = reloadIndex();
-    }
-
-    /**
-     * Lists up legal issue IDs for this project from the disk.
-     */
-    private Set<Integer> reloadIndex() {
-        Set<Integer> issueList = new HashSet<Integer>();
-        for(File xml : listXmlFiles()) {
-            String n = xml.getName();
-            n = n.substring(0,n.length()-4);
-            try {
-                issueList.add(Integer.parseInt(n));
-            } catch (NumberFormatException e) {
-                // ignore
+        if(SegmentStore.exists(this.home)) {
+            store = new SegmentStore(this.home);
+            if(getMigrationMarker().exists()) {
+                LOGGER.info("Resuming the interrupted migration of "+this.home);
+                migrateToSegmentStore();
             }
+        } else {
+            store = new XmlFileStore(this.home);
         }
-        return issueList;
+        manifest = Manifest.load(new File(this.home,".manifest"),store);
+        indexDirectory = FSDirectory.open(getIndexDir());
+        searchers = new SearcherManager(indexDirectory);
+        columns = new SortColumns(new File(this.home,"sort-columns"));
+        IndexOptions options = readIndexOptions();
+        if(options!=null)
+            indexOptions = options;
     }
 
     /**
-     * List up all the issue XML files.
+     * Moves all the issues from the one-XML-file-per-issue layout into a {@link SegmentStore}.
+     * Subsequent instances for this project will automatically use the segment store.
      */
-    private File[] listXmlFiles() {
-        return home.listFiles(new FilenameFilter() {
-            public boolean accept(File dir, String name) {
-                return name.endsWith(".xml");
-            }
-        });
+    public synchronized void migrateToSegmentStore() throws IOException {
+        XmlFileStore xml = new XmlFileStore(home);
+        File marker = getMigrationMarker();
+        new FileOutputStream(marker).close();
+
+        SegmentStore seg = store instanceof SegmentStore ? (SegmentStore)store : new SegmentStore(home);
+        seg.importFrom(xml);
+        // switch before deleting, so that concurrent reads find the issues in the new store
+        store = seg;
+        xml.deleteAll();
+        marker.delete();
+    }
+
+    private File getMigrationMarker() {
+        return new File(home,".migrating");
     }
 
     /**
      * Gets the issue by the issue number, from the cache.
      */
     public JNIssue get(int id) throws ProcessingException {
-        synchronized (cache) {
-            JNIssue n = cache.get(id);
-            if(n==null) {
-                File f = getCacheFile(id);
-                if(f.exists()) {
-                    try {
-                        FileInputStream in = new FileInputStream(f);
-                        try {
-                            n = project.getIssueTracker().load(id,in);
-                            cache.put(id,n);
-                        } finally {
-                            in.close();
-                        }
-                    } catch (IOException e) {
-                        throw new ProcessingException(e);
-                    }
-                }
-            }
-            return n;
-        }
+        return cache.get(id,loader);
+    }
+
+    /**
+     * Gets the in-memory cache of parsed issues, to tune its size and check its statistics.
+     */
+    public IssueCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Gets the cache of recent query results, to tune its size and check its statistics.
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
     }
 
     /**
      * Gets all the cached issues.
      */
     public List<JNIssue> getAll() throws ProcessingException {
-        List<JNIssue> r = new ArrayList<JNIssue>();
-        for (Integer id : issueList)
-            r.add(get(id));
+        return getAll(manifest.ids());
+    }
+
+    /**
+     * Gets the given issues, sorted by their IDs.
+     *
+     * <p>
+     * Issues that are not in the memory cache are parsed in parallel
+     * by up to {@link #getLoaderThreads()} threads. IDs that don't exist are skipped.
+     */
+    public List<JNIssue> getAll(Collection<Integer> ids) throws ProcessingException {
+        List<JNIssue> r = new ArrayList<JNIssue>(ids.size());
+        int n = Math.min(loaderThreads,ids.size());
+        if(n<=1) {
+            for (Integer id : ids) {
+                JNIssue issue = get(id);
+                if(issue!=null)
+                    r.add(issue);
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(n,new DaemonThreadFactory("issue loader"));
+            try {
+                List<Future<JNIssue>> futures = new ArrayList<Future<JNIssue>>(ids.size());
+                for (final Integer id : ids) {
+                    futures.add(pool.submit(new Callable<JNIssue>() {
+                        public JNIssue call() throws ProcessingException {
+                            return get(id);
+                        }
+                    }));
+                }
+                for (Future<JNIssue> f : futures) {
+                    JNIssue issue = f.get();
+                    if(issue!=null)
+                        r.add(issue);
+                }
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if(t instanceof ProcessingException)
+                    throw (ProcessingException)t;
+                if(t instanceof RuntimeException)
+                    throw (RuntimeException)t;
+                throw new ProcessingException(t);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessingException(e);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
         Collections.sort(r,new Comparator<JNIssue>() {
             public int compare(JNIssue o1, JNIssue o2) {
                 return o1.getId()-o2.getId();
@@ -127,84 +289,282 @@ public class OfflineIssueTracker {
         return r;
     }
 
+    /**
+     * Number of threads used to parse issue XML files in {@link #getAll(Collection)}.
+     * Defaults to the number of processors.
+     */
+    public int getLoaderThreads() {
+        return loaderThreads;
+    }
+
+    public void setLoaderThreads(int n) {
+        if(n<=0)
+            throw new IllegalArgumentException("Invalid number of threads: "+n);
+        this.loaderThreads = n;
+    }
+
+    /**
+     * Number of threads that parse and analyze issues in {@link #buildSearchIndex()}.
+     * Defaults to the number of processors.
+     */
+    public int getIndexThreads() {
+        return indexThreads;
+    }
+
+    public void setIndexThreads(int n) {
+        if(n<=0)
+            throw new IllegalArgumentException("Invalid number of threads: "+n);
+        this.indexThreads = n;
+    }
+
+    /**
+     * Amount of memory the index writer uses to buffer documents before flushing a new segment.
+     * Larger buffers mean fewer segments to merge. Defaults to 16MB.
+     */
+    public double getRamBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    public void setRamBufferSizeMB(double mb) {
+        if(mb<=0)
+            throw new IllegalArgumentException("Invalid RAM buffer size: "+mb);
+        this.ramBufferSizeMB = mb;
+    }
+
+    /**
+     * Number of similarly sized segments the index writer lets accumulate before merging them.
+     * Smaller values merge more eagerly, and larger values defer the work to the final merge.
+     * Defaults to 10.
+     */
+    public int getMergeFactor() {
+        return mergeFactor;
+    }
+
+    public void setMergeFactor(int n) {
+        if(n<2)
+            throw new IllegalArgumentException("Invalid merge factor: "+n);
+        this.mergeFactor = n;
+    }
+
+    /**
+     * Boost of matches in the summary for {@link #rank(String, IssueFilter, int)},
+     * relative to {@link #getContentsBoost()}. Defaults to 4.
+     */
+    public float getSummaryBoost() {
+        return summaryBoost;
+    }
+
+    public void setSummaryBoost(float boost) {
+        this.summaryBoost = boost;
+    }
+
+    /**
+     * Boost of matches in the summary and the descriptions for {@link #rank(String, IssueFilter, int)}.
+     * Defaults to 1.
+     */
+    public float getContentsBoost() {
+        return contentsBoost;
+    }
+
+    public void setContentsBoost(float boost) {
+        this.contentsBoost = boost;
+    }
+
+    /**
+     * Default for the strong match ratio of {@link #rank(String, IssueFilter, int, float)}.
+     * Defaults to 0, which means it always finds the best hits among all the issues.
+     */
+    public float getStrongMatchRatio() {
+        return strongMatchRatio;
+    }
+
+    public void setStrongMatchRatio(float ratio) {
+        checkStrongMatchRatio(ratio);
+        this.strongMatchRatio = ratio;
+    }
+
+    static void checkStrongMatchRatio(float ratio) {
+        if(!(ratio>=0 && ratio<=1))
+            throw new IllegalArgumentException("Invalid ratio: "+ratio);
+    }
+
+    /**
+     * Gets a copy of the options that control what goes into the search index.
+     */
+    public IndexOptions getIndexOptions() {
+        return new IndexOptions(indexOptions);
+    }
+
+    /**
+     * Changes the options that control what goes into the search index.
+     * If the existing index was built with different options, it's rebuilt the next time it's used.
+     */
+    public synchronized void setIndexOptions(IndexOptions options) {
+        this.indexOptions = new IndexOptions(options);
+        indexVerified = false;
+    }
+
+    /**
+     * Creates a new {@link IssueDocument} that builds documents with the current {@link IndexOptions}.
+     */
+    IssueDocument createIssueDocument() {
+        return new IssueDocument(indexOptions);
+    }
+
+    /**
+     * Controls how hard {@link #refresh()} tries to make sure that the updates survive a crash.
+     * Defaults to {@link Durability#BATCH}.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
     /**
      * Connects to java.net and updates the local cache.
      *
      * @return
-     *      List of {@link JNIssue}s that were updated.
+     *      List of {@link JNIssue}s that were updated. Those that were fetched
+     *      but identical to the local copy are not included.
      */
-    public Collection<JNIssue> refresh() throws ProcessingException, IOException {
+    public synchronized Collection<JNIssue> refresh() throws ProcessingException, IOException {
         Map<Integer,JNIssue> issues;
 
-        File timestamp = new File(home, ".last-updated");
         long now = System.currentTimeMillis();
-        if(timestamp.exists()) {
-            long t = timestamp.lastModified()-24L*60*60*1000;
-            LOGGER.fine("Fetching issues updated since "+new Date(t));
-            // fetch new files. let's be bit conservative here since I don't know how the server handles timezones
-            issues = project.getIssueTracker().getUpdatedIssues(new Date(t));
+        Date since = getFetchCutoff();
+        if(since!=null) {
+            LOGGER.fine("Fetching issues updated since "+since);
+            issues = project.getIssueTracker().getUpdatedIssues(since);
         } else {
             // fetch all
             LOGGER.fine("Fetching all issues");
             issues = project.getIssueTracker().getAll();
-            new FileOutputStream(timestamp).close();
         }
 
-        // update the timestamp accordingly.
-        // to be on the safe side, use the timestamp before we query the server.
-        timestamp.setLastModified(now);
+        List<JNIssue> changed = persist(issues.values());
+        markUpdated(now);
 
-        // since we've parsed them, let's keep them in the cache.
-        cache.putAll(issues);
+        LOGGER.fine("Refreshed "+project.getName()+": "+new RefreshStats(issues.size(),changed.size()));
+        return changed;
+    }
 
-        // persist new XML files
-        for (JNIssue issue : issues.values()) {
-            // TODO: write should be atomic
-            OutputStream out = new BufferedOutputStream(new FileOutputStream(
-                    getCacheFile(issue.getId())));
-            try {
-                issue.save(out);
-            } finally {
-                out.close();
-            }
-        }
+    /**
+     * Connects to java.net, updates the local cache, and updates the search index.
+     *
+     * <p>
+     * Unlike calling {@link #refresh()} and {@link #updateSearchIndex(Collection)} in a sequence,
+     * each issue is persisted and indexed as soon as it's fetched. See {@link RefreshPipeline}.
+     *
+     * <p>
+     * Issues that haven't changed since the last refresh are neither written nor indexed,
+     * so refreshing a quiet project costs little more than the download.
+     *
+     * @return
+     *      how many issues were fetched and how many of them were changed.
+     */
+    public RefreshStats refreshAndIndex() throws ProcessingException, IOException {
+        return refreshAndIndex(new JavaNetIssueSource(project.getIssueTracker()));
+    }
 
-        issueList = reloadIndex();
+    /**
+     * Same as {@link #refreshAndIndex()} but fetches issues from the given source.
+     */
+    public synchronized RefreshStats refreshAndIndex(IssueSource source) throws ProcessingException, IOException {
+        long now = System.currentTimeMillis();
+        RefreshStats r = new RefreshPipeline(this,source).run(getFetchCutoff());
+        markUpdated(now);
+        return r;
+    }
 
-        return issues.values();
+    private File getTimestampFile() {
+        return new File(home, ".last-updated");
     }
 
     /**
-     * Encapsulates the search logic.
+     * Determines the point in time since which the updates need to be fetched.
+     *
+     * @return
+     *      null to fetch all the issues.
      */
-    private class Searcher {
-        private final IndexSearcher searcher;
-        private final QueryParser2 parser;
+    private Date getFetchCutoff() {
+        File timestamp = getTimestampFile();
+        if(!timestamp.exists())
+            return null;
+        // let's be bit conservative here since I don't know how the server handles timezones
+        return new Date(timestamp.lastModified()-24L*60*60*1000);
+    }
 
-        private Searcher() throws IOException {
-            IndexReader reader = openSearchIndex();
+    /**
+     * Records the time of the successful update, only after everything is safely persisted.
+     *
+     * @param now
+     *      to be on the safe side, use the timestamp before we query the server.
+     */
+    private void markUpdated(long now) throws IOException {
+        File timestamp = getTimestampFile();
+        if(!timestamp.exists())
+            new FileOutputStream(timestamp).close();
+        timestamp.setLastModified(now);
+    }
 
-            searcher = new IndexSearcher(reader);
-            Analyzer analyzer = IssueDocument.ISSUE_ANALYZER;
-            parser = new QueryParser2("contents", analyzer);
-            parser.addIntField("votes");
-            parser.addIntField("id");
-            parser.addIntField("priority");
-            parser.setDefaultOperator(Operator.AND);
-        }
+    /**
+     * Writes the fetched issues to the store and updates the manifest and the cache.
+     *
+     * <p>
+     * Issues that are identical to the local copy are not written.
+     *
+     * @return
+     *      the issues that were new or changed, which need to be indexed.
+     */
+    List<JNIssue> persist(Collection<JNIssue> issues) throws IOException {
+        // since we've parsed them, let's keep them in the cache.
+        for (JNIssue issue : issues)
+            cache.put(issue);
 
-        Hits search(String queryString) throws ParseException, IOException {
-            return search(queryString,"id");
+        // persist new XML files
+        List<JNIssue> changed = new ArrayList<JNIssue>();
+        Map<Integer,byte[]> records = new HashMap<Integer,byte[]>();
+        for (JNIssue issue : issues) {
+            byte[] xml = toXml(issue);
+            long lastModified = issue.getLastModified().getTimeInMillis();
+            if(manifest.isUnchanged(issue.getId(),lastModified,xml))
+                continue;
+            records.put(issue.getId(),xml);
+            changed.add(issue);
         }
-
-        Hits search(String queryString,String sortField) throws ParseException, IOException {
-            Query query = parser.parse(queryString);
-            System.out.println("Searching "+query);
-            return searcher.search(query,new Sort(sortField));
+        if(!records.isEmpty()) {
+            store.write(records,durability);
+            // only now that they are written, or else a failed write would look unchanged next time
+            for (JNIssue issue : changed)
+                manifest.put(issue.getId(),issue.getLastModified().getTimeInMillis(),records.get(issue.getId()));
+            manifest.save(durability);
         }
+        return changed;
     }
 
-    private volatile Searcher searcher = null;
+    private static byte[] toXml(JNIssue issue) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        issue.save(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates a parser for the query syntax of the search index.
+     * Parsers are not thread-safe, so one is created for each query.
+     */
+    QueryParser2 createParser() {
+        Analyzer analyzer = IssueDocument.ISSUE_ANALYZER;
+        QueryParser2 parser = new QueryParser2(IssueDocument.LUCENE_VERSION, "contents", analyzer);
+        for (String f : IssueDocument.INT_FIELDS)
+            parser.addIntField(f);
+        for (String f : IssueDocument.DATE_FIELDS)
+            parser.addDateField(f);
+        parser.setDefaultOperator(Operator.AND);
+        return parser;
+    }
 
     /**
      * Queries the search index by using the standard Lucene query syntax.
@@ -213,56 +573,726 @@ public class OfflineIssueTracker {
      * the details.
      */
     public List<JNIssue> search(String queryString, String sortField) throws ParseException, IOException {
-        Searcher s = searcher;
-        if(s==null)
-            s = searcher = new Searcher();
-        final Hits hits = s.search(queryString,sortField);
+        Query query = createParser().parse(queryString);
+        LOGGER.fine("Searching "+query);
+
+        // resolve hits into issue IDs while we hold on to the searcher,
+        // so that the returned list doesn't pin the reader
+        final int[] ids;
+        ensureSearchIndex();
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            QueryCache.Hits docs = search(searcher,query,IssueFilter.ALL,sortField,searcher.maxDoc());
+            // per-segment ID caches are shared with sorting and survive reopens, unlike one of the top-level reader
+            List<IndexReader> segments = new ArrayList<IndexReader>();
+            ReaderUtil.gatherSubReaders(segments,searcher.getIndexReader());
+            int[][] idValues = new int[segments.size()][];
+            int[] starts = new int[segments.size()];
+            int maxDoc = 0;
+            for( int i=0; i<idValues.length; i++ ) {
+                idValues[i] = FieldCache.DEFAULT.getInts(segments.get(i),"id",FieldCache.NUMERIC_UTILS_INT_PARSER);
+                starts[i] = maxDoc;
+                maxDoc += segments.get(i).maxDoc();
+            }
+            ids = new int[docs.docs.length];
+            for( int i=0; i<ids.length; i++ ) {
+                int doc = docs.docs[i];
+                int sub = ReaderUtil.subIndex(doc,starts);
+                ids[i] = idValues[sub][doc-starts[sub]];
+            }
+        } finally {
+            searchers.release(searcher);
+        }
+
         return new AbstractList<JNIssue>() {
             public JNIssue get(int index) {
                 try {
-                    Document d = hits.doc(index);
-                    String id = d.get("id");
-                    return OfflineIssueTracker.this.get(Integer.parseInt(id));
-                } catch (IOException e) {// UGLY
-                    throw new RuntimeException(e);
-                } catch (ProcessingException e) {
+                    return OfflineIssueTracker.this.get(ids[index]);
+                } catch (ProcessingException e) {// UGLY
                     throw new RuntimeException(e);
                 }
             }
 
             public int size() {
-                return hits.length();
+                return ids.length;
             }
         };
     }
 
-    private File getCacheFile(int id) {
-        return new File(home,String.format("%05d.xml", id));
+    /**
+     * Queries the search index like {@link #search(String, String)}, but only returns
+     * one page of the hits, rendered from the fields stored in the index.
+     *
+     * <p>
+     * No issue XML is parsed unless {@link IssueHit#getIssue()} is called.
+     *
+     * @param filter
+     *      Restricts the hits inside the index.
+     * @param sortField
+     *      Comma-separated list of fields to sort the hits by, each optionally preceded by '-'
+     *      for the descending order, such as "-votes,id".
+     * @param offset
+     *      Index of the first hit to return.
+     * @param limit
+     *      Maximum number of hits to return.
+     */
+    public SearchResult find(String queryString, IssueFilter filter, String sortField, int offset, int limit) throws ParseException, IOException {
+        Query query = createParser().parse(queryString);
+        LOGGER.fine("Searching "+query);
+        return find(query,filter,sortField,offset,limit);
+    }
+
+    public SearchResult find(String queryString, String sortField, int offset, int limit) throws ParseException, IOException {
+        return find(queryString,IssueFilter.ALL,sortField,offset,limit);
+    }
+
+    /**
+     * Finds the k issues that are the most relevant to the query, from the best to the worst.
+     *
+     * <p>
+     * Unlike {@link #find(String, IssueFilter, String, int, int)}, the hits are sorted by the relevance score,
+     * and words without a field name are searched in both the summary and the descriptions,
+     * with {@link #getSummaryBoost()} and {@link #getContentsBoost()}. Only the top k hits are
+     * kept while searching.
+     *
+     * @param strongMatchRatio
+     *      If non-zero, the search stops as soon as k hits are found that score at least this fraction
+     *      of a perfect match, a document that contains each of the query's terms once and nothing else.
+     *      Those hits are then good but not necessarily the best. Between 0 and 1.
+     */
+    public SearchResult rank(String queryString, IssueFilter filter, int k, float strongMatchRatio) throws ParseException, IOException {
+        checkStrongMatchRatio(strongMatchRatio);
+        Query query = createRankingParser().parse(queryString);
+        LOGGER.fine("Ranking "+query);
+
+        ensureSearchIndex();
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            float strongScore = 0;
+            if(strongMatchRatio>0)
+                strongScore = strongMatchRatio*RankCollector.perfectScore(searcher,query);
+            RankCollector collector = new RankCollector(Math.max(1,k),strongScore);
+            collector.search(searcher,query,filter.filter);
+            List<IssueHit> hits = new ArrayList<IssueHit>();
+            for (ScoreDoc sd : collector.getTopDocs())
+                hits.add(new IssueHit(this,searcher.getIndexReader().document(sd.doc,HIT_FIELDS),sd.score));
+            return new SearchResult(collector.getTotalHits(),0,hits,collector.isTerminatedEarly());
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    /**
+     * Creates a parser that searches words without a field name in both the summary and the descriptions.
+     */
+    QueryParser2 createRankingParser() {
+        QueryParser2 parser = createParser();
+        Map<String,Float> boosts = new LinkedHashMap<String,Float>();
+        boosts.put("summary",summaryBoost);
+        boosts.put("contents",contentsBoost);
+        parser.setDefaultFieldBoosts(boosts);
+        return parser;
+    }
+
+    /**
+     * Finds the k most relevant issues, stopping early by {@link #getStrongMatchRatio()}.
+     */
+    public SearchResult rank(String queryString, IssueFilter filter, int k) throws ParseException, IOException {
+        return rank(queryString,filter,k,strongMatchRatio);
+    }
+
+    /**
+     * Finds the k issues that are the most similar to the given issue, from the best to the worst,
+     * such as potential duplicates of a newly filed issue.
+     *
+     * <p>
+     * The most characteristic terms of the summary and the descriptions of the issue are searched
+     * in the summaries and the descriptions of the other issues, with {@link #getSummaryBoost()}
+     * and {@link #getContentsBoost()}.
+     *
+     * @throws IllegalArgumentException
+     *      if there's no such issue.
+     */
+    public SearchResult similar(int id, IssueFilter filter, int k) throws ProcessingException, IOException {
+        JNIssue issue = get(id);
+        if(issue==null)
+            throw new IllegalArgumentException("No such issue: "+id);
+
+        ensureSearchIndex();
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            Map<String,Float> boosts = new LinkedHashMap<String,Float>();
+            boosts.put("summary",summaryBoost);
+            boosts.put("contents",contentsBoost);
+            Query query = new SimilarIssueQuery(searcher.getIndexReader(),indexOptions).build(issue,boosts);
+            if(query==null)
+                return new SearchResult(0,0,Collections.<IssueHit>emptyList());
+            LOGGER.fine("Searching "+query);
+
+            RankCollector collector = new RankCollector(Math.max(1,k),0);
+            collector.search(searcher,query,filter.filter);
+            List<IssueHit> hits = new ArrayList<IssueHit>();
+            for (ScoreDoc sd : collector.getTopDocs())
+                hits.add(new IssueHit(this,searcher.getIndexReader().document(sd.doc,HIT_FIELDS),sd.score));
+            return new SearchResult(collector.getTotalHits(),0,hits);
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    /**
+     * Finds groups of near-duplicate issues across the whole project.
+     *
+     * <p>
+     * Issues are compared by the word pairs in their summaries and descriptions, using MinHash signatures
+     * that are kept next to the search index, so that only the issues that changed since the last
+     * call need to be parsed.
+     *
+     * @param threshold
+     *      Minimum estimated similarity (Jaccard coefficient of the word pairs) between 0 and 1,
+     *      for two issues to be considered duplicates. Pairs less than 50% similar are mostly missed.
+     * @return
+     *      Issue IDs of each group in the ascending order, the biggest group first.
+     */
+    public synchronized List<List<Integer>> findDuplicates(float threshold) throws ProcessingException, IOException {
+        if(threshold<=0 || threshold>1)
+            throw new IllegalArgumentException("Invalid threshold: "+threshold);
+        return new DuplicateFinder(this,manifest,new File(home,"minhash-signatures")).findClusters(threshold);
+    }
+
+    /**
+     * Lists up one page of the issues that pass the given filter, without any query.
+     */
+    public SearchResult list(IssueFilter filter, String sortField, int offset, int limit) throws IOException {
+        return find(new MatchAllDocsQuery(),filter,sortField,offset,limit);
+    }
+
+    private SearchResult find(Query query, IssueFilter filter, String sortField, int offset, int limit) throws IOException {
+        ensureSearchIndex();
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            int n = (int)Math.min((long)offset+limit,searcher.maxDoc());
+            QueryCache.Hits docs = search(searcher,query,filter,sortField,n);
+            List<IssueHit> hits = new ArrayList<IssueHit>();
+            for( int i=offset; i<docs.docs.length && i<n; i++ )
+                hits.add(new IssueHit(this,searcher.getIndexReader().document(docs.docs[i],HIT_FIELDS)));
+            return new SearchResult(docs.totalHits,offset,hits);
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    /**
+     * Finds the top n hits, through {@link QueryCache}.
+     */
+    private QueryCache.Hits search(IndexSearcher searcher, Query query, IssueFilter filter, String sortField, int n) throws IOException {
+        QueryCache.Key key = new QueryCache.Key(query,filter,sortField,searcher.getIndexReader().getVersion());
+        QueryCache.Hits h = queryCache.get(key,n);
+        if(h==null) {
+            TopFieldDocs docs = searcher.search(query,filter.filter,Math.max(1,n),columns.parseSort(sortField));
+            int[] r = new int[docs.scoreDocs.length];
+            for( int i=0; i<r.length; i++ )
+                r[i] = docs.scoreDocs[i].doc;
+            h = new QueryCache.Hits(docs.totalHits,r);
+            queryCache.put(key,h);
+        }
+        return h;
+    }
+
+    /**
+     * Counts the matching issues for each value of the given fields, in one pass over the hits.
+     *
+     * @param queryString
+     *      Null or empty to count all the issues that pass the filter.
+     * @param fields
+     *      Untokenized fields to count, such as {@link #FACET_FIELDS}.
+     */
+    public FacetResult facets(String queryString, IssueFilter filter, String... fields) throws ParseException, IOException {
+        Query query;
+        if(queryString==null || queryString.trim().length()==0)
+            query = new MatchAllDocsQuery();
+        else
+            query = createParser().parse(queryString);
+
+        ensureSearchIndex();
+        IndexSearcher searcher = searchers.acquire();
+        try {
+            FacetCollector collector = new FacetCollector(fields);
+            searcher.search(query,filter.filter,collector);
+            return collector.getResult();
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    /**
+     * Fields that are commonly used for {@link #facets(String, IssueFilter, String...)}.
+     */
+    public static final String[] FACET_FIELDS = {"component","subcomponent","status","priority","assignedTo"};
+
+    /**
+     * Stored fields needed to create {@link IssueHit}.
+     */
+    static final FieldSelector HIT_FIELDS = new MapFieldSelector(IssueDocument.STORED_FIELDS.toArray(new String[0]));
+
+    /**
+     * Measures how big the search index is, and which fields take up the space.
+     * This reads the whole index, so it takes a while.
+     */
+    public IndexSizeReport getIndexSizeReport() throws IOException {
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            return new IndexSizeReport(indexDirectory,searcher.getIndexReader());
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    /**
+     * Lists up the names of the indexed fields.
+     */
+    public List<String> getFieldNames() throws IOException {
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            List<String> r = new ArrayList<String>(ReaderUtil.getIndexedFields(searcher.getIndexReader()));
+            Collections.sort(r);
+            return r;
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    /**
+     * Lists up the indexed terms of the given field that start with the given prefix,
+     * from the term dictionary of the search index.
+     *
+     * @param max
+     *      Maximum number of terms to return.
+     */
+    public List<String> getTerms(String field, String prefix, int max) throws IOException {
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            List<String> r = new ArrayList<String>();
+            TermEnum te = searcher.getIndexReader().terms(new Term(field,prefix));
+            try {
+                do {
+                    Term t = te.term();
+                    if(t==null || !t.field().equals(field) || !t.text().startsWith(prefix))
+                        break;
+                    r.add(t.text());
+                } while(r.size()<max && te.next());
+            } finally {
+                te.close();
+            }
+            return r;
+        } finally {
+            searchers.release(searcher);
+        }
     }
 
     /**
      * Builds lucene search index.
+     *
+     * <p>
+     * Issues are parsed, converted to documents, and analyzed by {@link #getIndexThreads()} threads,
+     * all adding to one {@link IndexWriter}, which lets them run concurrently.
+     * The resulting index has the same documents as one built by a single thread,
+     * although the order of documents in the index may differ.
+     */
+    public synchronized void buildSearchIndex() throws IOException, ProcessingException {
+        buildSearchIndex(indexThreads,ramBufferSizeMB,indexOptions);
+    }
+
+    /**
+     * Builds lucene search index with the given settings instead of those of this tracker,
+     * such as for a one-off rebuild requested through {@link OITServer}.
+     *
+     * <p>
+     * The number of threads and the RAM buffer size only apply to this build. The options become
+     * those of this tracker if the build succeeds, as they describe what's in the index,
+     * and the index has to be updated with the same options.
+     */
+    public synchronized void buildSearchIndex(int threads, double ramBufferSizeMB, IndexOptions options) throws IOException, ProcessingException {
+        if(threads<=0)
+            throw new IllegalArgumentException("Invalid number of threads: "+threads);
+        if(ramBufferSizeMB<=0)
+            throw new IllegalArgumentException("Invalid RAM buffer size: "+ramBufferSizeMB);
+        options = new IndexOptions(options);
+        long start = System.currentTimeMillis();
+
+        IndexWriter writer;
+        try {
+            writer = new IndexWriter(indexDirectory, createIndexWriterConfig(threads,ramBufferSizeMB).setOpenMode(OpenMode.CREATE));
+        } catch (CorruptIndexException e) {
+            // even the create mode chokes on an index in an unsupported format (IndexFormatTooOldException
+            // and IndexFormatTooNewException are both CorruptIndexException). start from an empty directory.
+            // anything else, notably LockObtainFailedException, means someone else is using the index
+            LOGGER.log(Level.INFO, "Discarding the unreadable search index", e);
+            for (String f : indexDirectory.listAll())
+                indexDirectory.deleteFile(f);
+            writer = new IndexWriter(indexDirectory, createIndexWriterConfig(threads,ramBufferSizeMB).setOpenMode(OpenMode.CREATE));
+        }
+        boolean success = false;
+        try {
+            columns.startRebuild();
+            List<Integer> ids = new ArrayList<Integer>(manifest.ids());
+            Collections.sort(ids);
+            int n = Math.min(threads,ids.size());
+            IndexTask task = new IndexTask(writer,options,ids.iterator());
+            if(n<=1) {
+                task.call();
+            } else {
+                ExecutorService pool = Executors.newFixedThreadPool(n,new DaemonThreadFactory("index builder"));
+                try {
+                    List<Future<Void>> futures = new ArrayList<Future<Void>>(n);
+                    for( int i=0; i<n; i++ )
+                        futures.add(pool.submit(task));
+                    // wait for all the threads, so that none is still writing when the writer is rolled back
+                    Throwable t = null;
+                    for (Future<Void> f : futures) {
+                        try {
+                            f.get();
+                        } catch (ExecutionException e) {
+                            if(t==null)
+                                t = e.getCause();
+                        }
+                    }
+                    if(t instanceof ProcessingException)
+                        throw (ProcessingException)t;
+                    if(t instanceof IOException)
+                        throw (IOException)t;
+                    if(t instanceof RuntimeException)
+                        throw (RuntimeException)t;
+                    if(t!=null)
+                        throw new ProcessingException(t);
+                } catch (InterruptedException e) {
+                    // the threads must be done with the writer before it's rolled back
+                    task.abort();
+                    pool.shutdown();
+                    awaitTerminationUninterruptibly(pool);
+                    Thread.currentThread().interrupt();
+                    throw new ProcessingException(e);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            writer.forceMerge(1);
+            writer.close();
+            success = true;
+        } finally {
+            if(!success) {
+                try {
+                    writer.rollback();
+                } finally {
+                    columns.abortRebuild();
+                }
+            }
+        }
+        columns.commitRebuild();
+        indexOptions = options;
+        writeIndexVersion(options);
+        onIndexUpdated();
+
+        LOGGER.fine(String.format("Took %dms to index with %d threads",System.currentTimeMillis()-start,threads));
+    }
+
+    /**
+     * Waits until all the tasks of the shut down pool finish, even if the current thread is interrupted.
+     * The interrupt status is preserved.
+     */
+    private static void awaitTerminationUninterruptibly(ExecutorService pool) {
+        boolean interrupted = false;
+        while(true) {
+            try {
+                if(pool.awaitTermination(1, TimeUnit.DAYS))
+                    break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Takes issues one by one from the shared iterator and adds them to the index,
+     * until the iterator is exhausted. The same instance runs on all the index builder threads.
      */
-    public void buildSearchIndex() throws IOException, ProcessingException {
+    private final class IndexTask implements Callable<Void> {
+        private final IndexWriter writer;
+        private final IndexOptions options;
+        private final Iterator<Integer> ids;
+        private volatile boolean aborted;
+
+        IndexTask(IndexWriter writer, IndexOptions options, Iterator<Integer> ids) {
+            this.writer = writer;
+            this.options = options;
+            this.ids = ids;
+        }
+
+        private Integer next() {
+            synchronized (ids) {
+                return !aborted && ids.hasNext() ? ids.next() : null;
+            }
+        }
+
+        /**
+         * Makes all the threads stop after the issue they are working on.
+         */
+        void abort() {
+            aborted = true;
+        }
+
+        public Void call() throws ProcessingException, IOException {
+            boolean success = false;
+            try {
+                IssueDocument builder = new IssueDocument(options);
+                Integer id;
+                while((id=next())!=null) {
+                    JNIssue issue = get(id);
+                    if(issue==null)
+                        continue;
+                    // the index is created from scratch and the IDs are unique, so no need to delete the old document
+                    writer.addDocument(builder.build(issue));
+                    columns.put(issue);
+                }
+                success = true;
+                return null;
+            } finally {
+                if(!success)
+                    abort();
+            }
+        }
+    }
+
+    /**
+     * Updates the lucene search index only for the given issues,
+     * typically those returned from {@link #refresh()}.
+     *
+     * <p>
+     * The existing index is opened in the append mode and the index is not optimized,
+     * so the cost is proportional to the number of updated issues, not the size of the project.
+     * If the index doesn't exist yet or it's unusable, this method falls back to
+     * {@link #buildSearchIndex()}.
+     */
+    public synchronized void updateSearchIndex(Collection<JNIssue> issues) throws IOException, ProcessingException {
         long start = System.currentTimeMillis();
 
-        File indexDir = new File(home, "lucene-index");
-        IndexWriter writer = new IndexWriter(indexDir, IssueDocument.ISSUE_ANALYZER, true);
-        for (JNIssue issue : getAll())
-            writer.updateDocument(new Term("id",""+issue.getId()),IssueDocument.create(issue));
-        writer.optimize();
-        writer.close();
-        searcher = null; 
+        IndexWriter writer = openIndexWriter();
+        if(writer==null) {
+            buildSearchIndex();
+            return;
+        }
+        try {
+            IssueDocument builder = createIssueDocument();
+            for (JNIssue issue : issues)
+                writer.updateDocument(IssueDocument.idTerm(issue.getId()),builder.build(issue));
+            columns.putAll(issues);
+        } finally {
+            writer.close();
+        }
+        onIndexUpdated();
+
+        LOGGER.fine(String.format("Took %dms to index %d issues",System.currentTimeMillis()-start,issues.size()));
+    }
+
+    /**
+     * Opens the existing search index for appending.
+     *
+     * @return
+     *      null if the index doesn't exist or it's unusable, in which case it needs to be rebuilt.
+     */
+    IndexWriter openIndexWriter() throws IOException {
+        if(!isIndexCurrent())
+            return null;
+        try {
+            return new IndexWriter(indexDirectory, createIndexWriterConfig().setOpenMode(OpenMode.APPEND));
+        } catch (IOException e) {
+            // corrupt index. start from scratch
+            LOGGER.log(Level.WARNING, "Failed to open the search index. Rebuilding", e);
+            return null;
+        }
+    }
+
+    SortColumns getSortColumns() {
+        return columns;
+    }
+
+    private IndexWriterConfig createIndexWriterConfig() {
+        return createIndexWriterConfig(indexThreads,ramBufferSizeMB);
+    }
+
+    private IndexWriterConfig createIndexWriterConfig(int threads, double ramBufferSizeMB) {
+        TieredMergePolicy mp = new TieredMergePolicy();
+        mp.setSegmentsPerTier(mergeFactor);
+        mp.setMaxMergeAtOnce(mergeFactor);
+        return new IndexWriterConfig(IssueDocument.LUCENE_VERSION, IssueDocument.ISSUE_ANALYZER)
+            .setRAMBufferSizeMB(ramBufferSizeMB)
+            .setMergePolicy(mp)
+            .setMaxThreadStates(Math.max(threads,IndexWriterConfig.DEFAULT_MAX_THREAD_STATES));
+    }
+
+    /**
+     * Called when the search index is modified, to make the changes visible to searches.
+     */
+    void onIndexUpdated() throws IOException {
+        searchers.maybeReopen();
+        queryCache.clear();
+    }
+
+    /**
+     * Obtains the current searcher, building the search index if necessary.
+     * The caller must {@link #releaseSearcher(IndexSearcher)} it afterward.
+     */
+    IndexSearcher acquireSearcher() throws IOException {
+        ensureSearchIndex();
+        return searchers.acquire();
+    }
+
+    void releaseSearcher(IndexSearcher searcher) throws IOException {
+        searchers.release(searcher);
+    }
+
+    /**
+     * Makes sure that the search index exists and it's in the current format, or else rebuild it.
+     */
+    private void ensureSearchIndex() throws IOException {
+        if(indexVerified)
+            return;
+        synchronized (this) {
+            if(indexVerified)
+                return;
+            if(!isIndexCurrent() || !isIndexReadable()) {
+                LOGGER.info("Rebuilding the search index of "+home);
+                try {
+                    buildSearchIndex();
+                } catch (ProcessingException e) {
+                    throw (IOException)new IOException("Failed to rebuild the search index").initCause(e);
+                }
+            }
+            indexVerified = true;
+        }
+    }
+
+    /**
+     * Checks if the search index exists and it's built with the current {@link IssueDocument#VERSION}
+     * and {@link IndexOptions}.
+     */
+    private boolean isIndexCurrent() throws IOException {
+        if(!IndexReader.indexExists(indexDirectory) || !columns.exists())
+            return false;
+        File f = getIndexVersionFile();
+        if(!f.exists())
+            return false;
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+            return in.readInt()==IssueDocument.VERSION && in.readUTF().equals(indexOptions.toString());
+        } catch (IOException e) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Checks if the search index can be opened by the Lucene in use,
+     * as opposed to being left by an older version of this tool in a format that's no longer supported.
+     */
+    private boolean isIndexReadable() throws IOException {
+        try {
+            searchers.release(searchers.acquire());
+            return true;
+        } catch (IndexFormatTooOldException e) {
+            LOGGER.log(Level.INFO, "The search index is in an old format", e);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "The search index is corrupted", e);
+        }
+        return false;
+    }
+
+    /**
+     * Reads the {@link IndexOptions} that the current index was built with.
+     *
+     * @return
+     *      null if there's no index in the current format.
+     */
+    private IndexOptions readIndexOptions() throws IOException {
+        File f = getIndexVersionFile();
+        if(!f.exists())
+            return null;
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+            if(in.readInt()!=IssueDocument.VERSION)
+                return null;
+            return IndexOptions.parse(in.readUTF());
+        } catch (IOException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeIndexVersion(IndexOptions options) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(getIndexVersionFile()));
+        try {
+            out.writeInt(IssueDocument.VERSION);
+            out.writeUTF(options.toString());
+        } finally {
+            out.close();
+        }
+        indexVerified = true;
+    }
 
-        LOGGER.fine(String.format("Took %dms to index",System.currentTimeMillis()-start));
+    private File getIndexVersionFile() {
+        return new File(home,".index-version");
+    }
+
+    private File getIndexDir() {
+        return new File(home,"lucene-index");
+    }
+
+    /**
+     * Releases the search index and the store.
+     */
+    public void close() throws IOException {
+        searchers.close();
+        indexDirectory.close();
+        store.close();
     }
 
     /**
      * Opens the lucene search index.
      */
     public IndexReader openSearchIndex() throws IOException {
-        return IndexReader.open(new File(home,"lucene-index"));
+        return IndexReader.open(indexDirectory);
     }
 
+    /**
+     * Default of {@link #getSummaryBoost()}.
+     */
+    public static final float DEFAULT_SUMMARY_BOOST = 4;
+
+    /**
+     * Suggested threshold of {@link #findDuplicates(float)}.
+     */
+    public static final float DEFAULT_DUPLICATE_THRESHOLD = 0.6f;
+
+    /**
+     * Default of {@link #getMergeFactor()}.
+     */
+    public static final int DEFAULT_MERGE_FACTOR = 10;
+
+    /**
+     * Default number of parsed issues kept in memory.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    /**
+     * Default number of hits kept in {@link QueryCache}, which takes up 4 bytes each.
+     */
+    public static final int DEFAULT_QUERY_CACHE_DOCS = 1024*1024;
+
     private static final Logger LOGGER = Logger.getLogger(OfflineIssueTracker.class.getName());
 }
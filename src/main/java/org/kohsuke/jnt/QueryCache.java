@@ -0,0 +1,197 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.search.Query;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of the top hits of recent queries.
+ *
+ * <p>
+ * Entries are keyed by the parsed query, the filter, the sort specification, and the version
+ * of the index reader that the hits came from, so a stale entry can never be returned
+ * for a newer index. The tracker also clears the cache whenever the index is updated,
+ * so that the stale entries don't hold on to memory.
+ *
+ * <p>
+ * The memory is bounded by the total number of document numbers kept in the cache,
+ * rather than the number of entries, since the entries vary wildly in size.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class QueryCache {
+    static final class Key {
+        private final Query query;
+        private final IssueFilter filter;
+        private final String sort;
+        private final long version;
+
+        Key(Query query, IssueFilter filter, String sort, long version) {
+            this.query = query;
+            this.filter = filter;
+            this.sort = sort;
+            this.version = version;
+        }
+
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)) return false;
+            Key that = (Key)o;
+            return query.equals(that.query) && filter==that.filter && sort.equals(that.sort) && version==that.version;
+        }
+
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{query,filter,sort,version});
+        }
+    }
+
+    /**
+     * Top hits of a query.
+     */
+    static final class Hits {
+        final int totalHits;
+        /**
+         * Document numbers of the top hits, in the sorted order.
+         */
+        final int[] docs;
+
+        Hits(int totalHits, int[] docs) {
+            this.totalHits = totalHits;
+            this.docs = docs;
+        }
+
+        /**
+         * Checks if this contains the first n hits.
+         */
+        boolean covers(int n) {
+            return docs.length>=Math.min(n,totalHits);
+        }
+    }
+
+    private volatile int maxDocs;
+
+    /**
+     * Guarded by {@link #map}.
+     */
+    private int size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Guarded by itself. Access ordered, so the eldest entry is the least recently used one.
+     */
+    private final Map<Key,Hits> map = new LinkedHashMap<Key,Hits>(16,0.75f,true);
+
+    QueryCache(int maxDocs) {
+        setMaxDocs(maxDocs);
+    }
+
+    /**
+     * Gets the cached hits if they include at least the first n hits.
+     *
+     * @return null if not cached.
+     */
+    Hits get(Key key, int n) {
+        Hits h;
+        synchronized (map) {
+            h = map.get(key);
+        }
+        if(h!=null && h.covers(n)) {
+            hits.incrementAndGet();
+            return h;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(Key key, Hits h) {
+        if(h.docs.length>maxDocs)
+            return; // too big to cache
+        synchronized (map) {
+            Hits old = map.put(key,h);
+            if(old!=null)
+                size -= old.docs.length;
+            size += h.docs.length;
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Hits> itr = map.values().iterator();
+        while(size>maxDocs && itr.hasNext()) {
+            size -= itr.next().docs.length;
+            itr.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Discards all the cached hits.
+     */
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Maximum total number of hits kept in memory.
+     */
+    public int getMaxDocs() {
+        return maxDocs;
+    }
+
+    public void setMaxDocs(int maxDocs) {
+        if(maxDocs<0)
+            throw new IllegalArgumentException("Invalid cache size: "+maxDocs);
+        this.maxDocs = maxDocs;
+        synchronized (map) {
+            evict();
+        }
+    }
+
+    /**
+     * Number of queries currently in the cache.
+     */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Ratio of the lookups that were served from the cache, or 0 if there has been no lookup.
+     */
+    public double getHitRate() {
+        long h = getHitCount();
+        long total = h+getMissCount();
+        return total==0 ? 0 : (double)h/total;
+    }
+
+    public String toString() {
+        int docs;
+        synchronized (map) {
+            docs = size;
+        }
+        return String.format("QueryCache[size=%d,docs=%d/%d,hits=%d,misses=%d,evictions=%d,hitRate=%.1f%%]",
+                size(), docs, maxDocs, getHitCount(), getMissCount(), getEvictionCount(), getHitRate()*100);
+    }
+}
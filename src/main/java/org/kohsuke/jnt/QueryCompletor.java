@@ -0,0 +1,69 @@
+package org.kohsuke.jnt;
+
+import jline.Completor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Completes field names and field values in the query syntax,
+ * by looking at the search index of {@link OfflineIssueTracker}.
+ *
+ * <p>
+ * "sta" completes to "status:", and "status:re" completes to the values
+ * of the status field that start with "re", like "status:reopened" and "status:resolved".
+ *
+ * @author Kohsuke Kawaguchi
+ */
+class QueryCompletor implements Completor {
+    private final OfflineIssueTracker oit;
+
+    QueryCompletor(OfflineIssueTracker oit) {
+        this.oit = oit;
+    }
+
+    @SuppressWarnings("unchecked") // jline's Completor predates generics, and its candidates are strings
+    public int complete(String buffer, int cursor, List candidates) {
+        // find the word being completed
+        int start = cursor;
+        while(start>0 && !isDelimiter(buffer.charAt(start-1)))
+            start--;
+        String word = buffer.substring(start,cursor);
+        if(word.startsWith("+") || word.startsWith("-")) {
+            start++;
+            word = word.substring(1);
+        }
+
+        try {
+            int idx = word.indexOf(':');
+            if(idx<0) {
+                for (String f : oit.getFieldNames()) {
+                    if(f.startsWith(word))
+                        candidates.add(f+':');
+                }
+            } else {
+                String field = word.substring(0,idx);
+                if(IssueDocument.INT_FIELDS.contains(field) || IssueDocument.DATE_FIELDS.contains(field))
+                    return -1;  // the terms are encoded, so they are not useful for completion
+                String prefix = word.substring(idx+1).toLowerCase();
+                for (String t : oit.getTerms(field,prefix,MAX_CANDIDATES))
+                    candidates.add(field+':'+t);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to complete "+word, e);
+            return -1;
+        }
+
+        return candidates.isEmpty() ? -1 : start;
+    }
+
+    private static boolean isDelimiter(char ch) {
+        return Character.isWhitespace(ch) || ch=='(' || ch==')';
+    }
+
+    private static final int MAX_CANDIDATES = 100;
+
+    private static final Logger LOGGER = Logger.getLogger(QueryCompletor.class.getName());
+}
@@ -0,0 +1,175 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.PriorityQueue;
+
+import java.io.IOException;
+
+/**
+ * Collects the k best scoring hits in a bounded priority queue.
+ *
+ * <p>
+ * Once the queue is full, a hit only costs a comparison with the weakest one in the queue,
+ * and the {@link ScoreDoc}s are recycled, so the cost doesn't grow with the number of hits.
+ * If a minimum "strong" score is given, the search stops as soon as k hits scoring at least
+ * that much are found, without looking at the rest of the index. As raw scores depend on the query,
+ * the threshold is normally a fraction of {@link #perfectScore(IndexSearcher, Query)}. Those k hits are then
+ * good matches, although not necessarily the best ones, and {@link #getTotalHits()}
+ * only counts the hits seen until then.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class RankCollector extends Collector {
+    private final int k;
+    private final float strongScore;
+    private final HitQueue queue;
+    private Scorer scorer;
+    private int docBase;
+    private int totalHits;
+    private int strongHits;
+    private boolean terminatedEarly;
+
+    /**
+     * @param strongScore
+     *      The score at or above which a hit counts as strong, or 0 to always go through all the hits.
+     */
+    RankCollector(int k, float strongScore) {
+        this.k = k;
+        this.strongScore = strongScore;
+        this.queue = new HitQueue(k);
+    }
+
+    /**
+     * Computes the score of a perfect match to the query, a document that contains each of
+     * the query's terms once, every term in a field of its own.
+     *
+     * <p>
+     * Real hits score lower, as their fields have more words in them, but the ratio doesn't
+     * depend on the query, which makes it usable as the scale for {@link #RankCollector(int, float)}.
+     */
+    static float perfectScore(IndexSearcher searcher, Query query) throws IOException {
+        query = searcher.rewrite(query);
+        float sumOfSquaredWeights = query.createWeight(searcher).sumOfSquaredWeights();
+        if(sumOfSquaredWeights==0)
+            return 0;
+        return unnormalizedScore(searcher,query,1)*searcher.getSimilarity().queryNorm(sumOfSquaredWeights);
+    }
+
+    /**
+     * Score of a perfect match to a rewritten query, before the query normalization.
+     *
+     * <p>
+     * A leaf query matching once in a one-word field scores its own boost times the square of
+     * its idf, which is what its weight reports as {@link org.apache.lucene.search.Weight#sumOfSquaredWeights()}
+     * when the boost is left out, and the boosts of the enclosing boolean queries multiply it.
+     */
+    private static float unnormalizedScore(IndexSearcher searcher, Query query, float boost) throws IOException {
+        boost *= query.getBoost();
+        if(query instanceof BooleanQuery) {
+            float score = 0;
+            for (BooleanClause c : ((BooleanQuery)query).getClauses())
+                if(!c.isProhibited())
+                    score += unnormalizedScore(searcher,c.getQuery(),boost);
+            return score;
+        }
+
+        Query unboosted = (Query)query.clone();
+        unboosted.setBoost(1);
+        return boost*unboosted.createWeight(searcher).sumOfSquaredWeights();
+    }
+
+    /**
+     * Runs the search, stopping early if there are enough strong hits.
+     */
+    void search(IndexSearcher searcher, Query query, Filter filter) throws IOException {
+        try {
+            searcher.search(query,filter,this);
+        } catch (EnoughHits e) {
+            terminatedEarly = true;
+        }
+    }
+
+    public void setScorer(Scorer scorer) {
+        this.scorer = scorer;
+    }
+
+    public void setNextReader(IndexReader reader, int docBase) {
+        this.docBase = docBase;
+    }
+
+    public void collect(int doc) throws IOException {
+        float score = scorer.score();
+        totalHits++;
+
+        if(queue.size()<k) {
+            queue.add(new ScoreDoc(docBase+doc,score));
+        } else {
+            ScoreDoc top = queue.top();
+            if(score<=top.score)
+                return; // ties go to the earlier document, which is already in the queue
+            top.doc = docBase+doc;
+            top.score = score;
+            queue.updateTop();
+        }
+
+        if(strongScore>0 && score>=strongScore && ++strongHits>=k)
+            throw EnoughHits.INSTANCE;
+    }
+
+    public boolean acceptsDocsOutOfOrder() {
+        return false;
+    }
+
+    int getTotalHits() {
+        return totalHits;
+    }
+
+    boolean isTerminatedEarly() {
+        return terminatedEarly;
+    }
+
+    /**
+     * Returns the collected hits from the best to the worst. Can be only called once.
+     */
+    ScoreDoc[] getTopDocs() {
+        ScoreDoc[] r = new ScoreDoc[queue.size()];
+        for( int i=r.length-1; i>=0; i-- )
+            r[i] = queue.pop();
+        return r;
+    }
+
+    /**
+     * Keeps the weakest hit at the top.
+     */
+    private static final class HitQueue extends PriorityQueue<ScoreDoc> {
+        HitQueue(int size) {
+            initialize(size);
+        }
+
+        protected boolean lessThan(ScoreDoc a, ScoreDoc b) {
+            if(a.score!=b.score)
+                return a.score<b.score;
+            return a.doc>b.doc;
+        }
+    }
+
+    /**
+     * Unwinds the search once enough strong hits are found.
+     * Shared and without a stack trace, as it's not an error.
+     */
+    private static final class EnoughHits extends RuntimeException {
+        static final EnoughHits INSTANCE = new EnoughHits();
+
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Fetches, persists, and indexes issues in three concurrent stages
+ * connected by bounded queues.
+ *
+ * <p>
+ * Each issue moves on to the next stage as soon as the previous stage is done with it,
+ * so the whole project never needs to be held in memory at once, and the total time
+ * approaches that of the slowest stage. When a stage falls behind, the bounded queue
+ * blocks the stage before it.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class RefreshPipeline {
+    private final OfflineIssueTracker tracker;
+    private final IssueSource source;
+
+    private final BlockingQueue<Object> fetched;
+    private final BlockingQueue<Object> persisted;
+
+    private final List<Thread> stages = new ArrayList<Thread>();
+    private final AtomicInteger fetchedCount = new AtomicInteger();
+    private final AtomicInteger changedCount = new AtomicInteger();
+
+    /**
+     * The first error that happened in any of the stages.
+     */
+    private volatile Throwable failure;
+
+    /**
+     * Set to true if the index couldn't be updated incrementally.
+     */
+    private volatile boolean rebuildIndex;
+
+    RefreshPipeline(OfflineIssueTracker tracker, IssueSource source) {
+        this(tracker,source,DEFAULT_QUEUE_SIZE);
+    }
+
+    RefreshPipeline(OfflineIssueTracker tracker, IssueSource source, int queueSize) {
+        this.tracker = tracker;
+        this.source = source;
+        this.fetched = new ArrayBlockingQueue<Object>(queueSize);
+        this.persisted = new ArrayBlockingQueue<Object>(queueSize);
+    }
+
+    /**
+     * Runs the pipeline to the completion.
+     *
+     * @param since
+     *      Passed to {@link IssueSource#fetch(Date, IssueSource.Sink)}.
+     * @return
+     *      number of issues that were fetched, and those of them that were changed
+     *      and therefore went through the entire pipeline.
+     */
+    RefreshStats run(final Date since) throws ProcessingException, IOException {
+        long start = System.currentTimeMillis();
+
+        stage("fetch",new Stage() {
+            public void run() throws Exception {
+                try {
+                    source.fetch(since,new IssueSource.Sink() {
+                        public void add(JNIssue issue) throws InterruptedException {
+                            fetched.put(issue);
+                        }
+                    });
+                } finally {
+                    end(fetched);
+                }
+            }
+        });
+
+        stage("persist",new Stage() {
+            public void run() throws Exception {
+                try {
+                    List<JNIssue> batch = new ArrayList<JNIssue>(PERSIST_BATCH);
+                    while(true) {
+                        Object o = fetched.take();
+                        if(o!=END)
+                            batch.add((JNIssue)o);
+                        if(batch.size()>=PERSIST_BATCH || (o==END && !batch.isEmpty())) {
+                            List<JNIssue> changed = tracker.persist(batch);
+                            for (JNIssue issue : changed)
+                                persisted.put(issue);
+                            fetchedCount.addAndGet(batch.size());
+                            changedCount.addAndGet(changed.size());
+                            batch.clear();
+                        }
+                        if(o==END)  return;
+                    }
+                } finally {
+                    end(persisted);
+                }
+            }
+        });
+
+        stage("index",new Stage() {
+            public void run() throws Exception {
+                IndexWriter writer = tracker.openIndexWriter();
+                if(writer==null)
+                    rebuildIndex = true;
+                try {
+                    IssueDocument builder = tracker.createIssueDocument();
+                    Object o;
+                    while((o=persisted.take())!=END) {
+                        if(writer!=null) {
+                            JNIssue issue = (JNIssue)o;
+                            writer.updateDocument(IssueDocument.idTerm(issue.getId()),builder.build(issue));
+                            tracker.getSortColumns().put(issue);
+                        }
+                    }
+                } finally {
+                    if(writer!=null) {
+                        tracker.getSortColumns().flush();
+                        writer.close();
+                        tracker.onIndexUpdated();
+                    }
+                }
+            }
+        });
+
+        joinStages();
+
+        Throwable t = failure;
+        if(t!=null) {
+            if(t instanceof ProcessingException)
+                throw (ProcessingException)t;
+            if(t instanceof IOException)
+                throw (IOException)t;
+            if(t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if(t instanceof Error)
+                throw (Error)t;
+            throw new ProcessingException(t);
+        }
+
+        if(rebuildIndex)
+            tracker.buildSearchIndex();
+
+        RefreshStats r = new RefreshStats(fetchedCount.get(),changedCount.get());
+        LOGGER.fine(String.format("Took %dms to refresh issues: %s",System.currentTimeMillis()-start,r));
+        return r;
+    }
+
+    /**
+     * Waits for all the stages to finish.
+     *
+     * <p>
+     * If interrupted, the pipeline is aborted, but the wait continues, as the stages may still be
+     * using the index writer or the store. The interrupt status is restored at the end.
+     */
+    private void joinStages() {
+        boolean interrupted = false;
+        for (Thread t : stages) {
+            while(true) {
+                try {
+                    t.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    abort(e);
+                }
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private synchronized void stage(String name, final Stage stage) {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    stage.run();
+                } catch (InterruptedException e) {
+                    // aborted because another stage failed
+                } catch (Throwable e) {
+                    abort(e);
+                }
+            }
+        },"refresh pipeline: "+name);
+        t.setDaemon(true);
+        stages.add(t);
+        t.start();
+    }
+
+    /**
+     * Marks the end of the stream, unless the pipeline is aborted.
+     *
+     * <p>
+     * Once aborted, the consumer may be already gone and never drain a full queue,
+     * and the interrupt that would have woken us up was consumed by the time we get here.
+     * Since {@link #abort(Throwable)} sets {@link #failure} before interrupting,
+     * an abort after this check still interrupts the put.
+     */
+    private void end(BlockingQueue<Object> queue) throws InterruptedException {
+        if(failure==null)
+            queue.put(END);
+    }
+
+    /**
+     * Records the failure and stops all the stages.
+     */
+    private synchronized void abort(Throwable t) {
+        if(failure!=null)   return;
+        failure = t;
+        for (Thread s : stages)
+            s.interrupt();
+    }
+
+    /**
+     * Marks the end of the stream in the queues.
+     */
+    private static final Object END = new Object();
+
+    private static final int DEFAULT_QUEUE_SIZE = 256;
+
+    /**
+     * Issues are persisted in small batches so that the file system syncs can be amortized.
+     */
+    private static final int PERSIST_BATCH = 100;
+
+    private static final Logger LOGGER = Logger.getLogger(RefreshPipeline.class.getName());
+}
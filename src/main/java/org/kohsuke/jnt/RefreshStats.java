@@ -0,0 +1,42 @@
+package org.kohsuke.jnt;
+
+/**
+ * Outcome of {@link OfflineIssueTracker#refreshAndIndex()}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class RefreshStats {
+    private final int fetched;
+    private final int changed;
+
+    RefreshStats(int fetched, int changed) {
+        this.fetched = fetched;
+        this.changed = changed;
+    }
+
+    /**
+     * Number of issues that were downloaded.
+     */
+    public int getFetched() {
+        return fetched;
+    }
+
+    /**
+     * Number of issues that were new or different from the local copy,
+     * which were written to the disk and indexed.
+     */
+    public int getChanged() {
+        return changed;
+    }
+
+    /**
+     * Number of issues that were identical to the local copy, and therefore skipped.
+     */
+    public int getSkipped() {
+        return fetched-changed;
+    }
+
+    public String toString() {
+        return String.format("fetched %d, changed %d, skipped %d",fetched,changed,getSkipped());
+    }
+}
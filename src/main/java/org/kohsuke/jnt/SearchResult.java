@@ -0,0 +1,66 @@
+package org.kohsuke.jnt;
+
+import java.util.List;
+
+/**
+ * One page of search hits.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see OfflineIssueTracker#find(String, String, int, int)
+ */
+public final class SearchResult {
+    private final int totalHits;
+    private final int offset;
+    private final List<IssueHit> hits;
+    private final boolean terminatedEarly;
+
+    SearchResult(int totalHits, int offset, List<IssueHit> hits) {
+        this(totalHits,offset,hits,false);
+    }
+
+    SearchResult(int totalHits, int offset, List<IssueHit> hits, boolean terminatedEarly) {
+        this.totalHits = totalHits;
+        this.offset = offset;
+        this.hits = hits;
+        this.terminatedEarly = terminatedEarly;
+    }
+
+    /**
+     * Number of issues that matched the query, including those that are not in this page.
+     * If {@link #isTerminatedEarly()}, only those seen before the search stopped are counted.
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * Index of the first hit of this page among all the hits.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Hits in this page.
+     */
+    public List<IssueHit> getHits() {
+        return hits;
+    }
+
+    /**
+     * True if the ranked search stopped as soon as it found enough strong hits,
+     * without looking at all the issues.
+     *
+     * @see OfflineIssueTracker#rank(String, IssueFilter, int, float)
+     */
+    public boolean isTerminatedEarly() {
+        return terminatedEarly;
+    }
+
+    /**
+     * True if there are more hits after this page.
+     */
+    public boolean hasMore() {
+        return offset+hits.size()<totalHits;
+    }
+}
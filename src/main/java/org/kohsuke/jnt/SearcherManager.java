@@ -0,0 +1,135 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ReaderUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares one {@link IndexSearcher} among concurrent searches,
+ * and swaps in a fresh one when the index changes.
+ *
+ * <p>
+ * This is a thin layer over Lucene's own {@link org.apache.lucene.search.SearcherManager},
+ * which does the reference counting and reopens only the changed segments.
+ * On top of that, this class opens the index lazily (since the index may not exist yet
+ * when the tracker is created), and warms up new searchers before they are made visible.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class SearcherManager {
+    private final Directory indexDir;
+
+    /**
+     * Guarded by this. Null until the first search.
+     */
+    private org.apache.lucene.search.SearcherManager manager;
+
+    /**
+     * Guarded by this. Set by {@link #close()}, after which the manager is never opened again.
+     */
+    private boolean closed;
+
+    /**
+     * Serializes {@link #maybeReopen()}. Lucene's {@code maybeRefresh()} returns without
+     * doing anything when another thread is refreshing, which could miss the changes
+     * that were committed after the other thread started.
+     */
+    private final Object reopenLock = new Object();
+
+    SearcherManager(Directory indexDir) {
+        this.indexDir = indexDir;
+    }
+
+    /**
+     * Obtains the current searcher. The caller must {@link #release(IndexSearcher)} it afterward.
+     *
+     * @throws AlreadyClosedException
+     *      if this manager is already closed.
+     */
+    IndexSearcher acquire() throws IOException {
+        return getManager().acquire();
+    }
+
+    void release(IndexSearcher searcher) throws IOException {
+        // same as what the manager does, but this works even if the manager is closed in the mean time
+        searcher.getIndexReader().decRef();
+    }
+
+    private synchronized org.apache.lucene.search.SearcherManager getManager() throws IOException {
+        if(closed)
+            throw new AlreadyClosedException("this SearcherManager is closed");
+        if(manager==null)
+            manager = new org.apache.lucene.search.SearcherManager(indexDir,WARMER);
+        return manager;
+    }
+
+    /**
+     * Called after the index is modified to bring in a new searcher.
+     * Searches already in progress keep using the old searcher.
+     */
+    void maybeReopen() throws IOException {
+        synchronized (reopenLock) {
+            org.apache.lucene.search.SearcherManager m;
+            synchronized (this) {
+                m = manager;
+            }
+            if(m==null)
+                return; // nobody has searched yet. we'll open it lazily
+            m.maybeRefresh();
+        }
+    }
+
+    /**
+     * Releases the current searcher. It'll be closed once all the searches complete.
+     */
+    void close() throws IOException {
+        org.apache.lucene.search.SearcherManager m;
+        synchronized (this) {
+            m = manager;
+            manager = null;
+            closed = true;
+        }
+        if(m!=null)
+            m.close();
+    }
+
+    /**
+     * Runs a query on new searchers so that the first real search doesn't pay for loading the sort cache,
+     * and loads the term ordinals for faceting.
+     */
+    private static final SearcherFactory WARMER = new SearcherFactory() {
+        public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            long start = System.currentTimeMillis();
+            try {
+                searcher.search(new MatchAllDocsQuery(),null,1,new Sort(IssueDocument.sortField("id",false)));
+                List<IndexReader> segments = new ArrayList<IndexReader>();
+                ReaderUtil.gatherSubReaders(segments,reader);
+                for (IndexReader r : segments)
+                    for (String f : OfflineIssueTracker.FACET_FIELDS)
+                        FieldCache.DEFAULT.getStringIndex(r,f);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to warm up the searcher", e);
+            } catch (RuntimeException e) {
+                // e.g., an empty index doesn't have any terms to sort on
+                LOGGER.log(Level.FINE, "Failed to warm up the searcher", e);
+            }
+            LOGGER.fine(String.format("Took %dms to warm up the searcher",System.currentTimeMillis()-start));
+            return searcher;
+        }
+    };
+
+    private static final Logger LOGGER = Logger.getLogger(SearcherManager.class.getName());
+}
@@ -0,0 +1,493 @@
+package org.kohsuke.jnt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link IssueStore} that appends the XML of all the issues into a single segment file,
+ * with a separate offset index.
+ *
+ * <p>
+ * The segment file is a sequence of records, each of which is the issue ID,
+ * the length of the XML, and the XML itself. Updating an issue appends a new record,
+ * and the offset index is rewritten to point to it. When the stale records start
+ * to outweigh the live ones, the segment is compacted.
+ *
+ * <p>
+ * Reads go through a memory-mapped view of the segment, so listing and loading
+ * all the issues costs one mmap instead of opening thousands of files.
+ * Appending maps only the newly written region, and the whole segment is mapped again
+ * only once there are {@link #MAX_CHUNKS} such regions.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class SegmentStore implements IssueStore {
+    private final File segment;
+    private final File index;
+
+    /**
+     * Offset index of the compacted segment, written before the segment is replaced.
+     */
+    private final File compactedIndex;
+
+    /**
+     * Immutable snapshot of the mapped segment and the offset index,
+     * replaced as a whole whenever the segment is written to.
+     */
+    private volatile State state = State.EMPTY;
+
+    private static final class Extent {
+        final long offset;
+        final int length;
+
+        Extent(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class State {
+        /**
+         * Mapped regions of the segment and their offsets, in the file order.
+         * Each covers whole records, so a record never straddles two of them.
+         */
+        final ByteBuffer[] chunks;
+        final long[] bases;
+
+        /**
+         * Length of the segment covered by {@link #chunks}.
+         */
+        final long length;
+
+        final Map<Integer,Extent> extents;
+
+        State(ByteBuffer[] chunks, long[] bases, long length, Map<Integer,Extent> extents) {
+            this.chunks = chunks;
+            this.bases = bases;
+            this.length = length;
+            this.extents = extents;
+        }
+
+        /**
+         * Adds the mapping of the region appended at the end of the segment.
+         */
+        State append(ByteBuffer chunk, long length, Map<Integer,Extent> extents) {
+            ByteBuffer[] c = new ByteBuffer[chunks.length+1];
+            System.arraycopy(chunks,0,c,0,chunks.length);
+            c[chunks.length] = chunk;
+            long[] b = new long[bases.length+1];
+            System.arraycopy(bases,0,b,0,bases.length);
+            b[bases.length] = this.length;
+            return new State(c,b,length,extents);
+        }
+
+        /**
+         * Returns a buffer positioned on the data of the given record.
+         */
+        ByteBuffer slice(Extent e) {
+            int i = Arrays.binarySearch(bases,e.offset);
+            if(i<0) i = -i-2;
+            ByteBuffer buf = chunks[i].duplicate();
+            int pos = (int)(e.offset-bases[i]);
+            buf.limit(pos+e.length);
+            buf.position(pos);
+            return buf;
+        }
+
+        static final State EMPTY = new State(new ByteBuffer[0],new long[0],0,Collections.<Integer,Extent>emptyMap());
+    }
+
+    public SegmentStore(File dir) throws IOException {
+        this.segment = new File(dir,SEGMENT_FILE);
+        this.index = new File(dir,"issues.idx");
+        this.compactedIndex = new File(dir,"issues.idx.compacted");
+        open();
+    }
+
+    /**
+     * Returns true if the given directory contains a segment store.
+     */
+    public static boolean exists(File dir) {
+        return new File(dir,SEGMENT_FILE).exists();
+    }
+
+    private void open() throws IOException {
+        long length = segment.length();
+        if(compactedIndex.exists()) {
+            // we crashed in the middle of compaction. if the compacted segment made it into place,
+            // so does its index. otherwise the old segment and the old index are still good.
+            Map<Integer,Extent> extents = new HashMap<Integer,Extent>();
+            if(loadIndex(compactedIndex,extents)==length)
+                FileUtil.rename(compactedIndex,index);
+            else
+            if(!compactedIndex.delete())
+                throw new IOException("Failed to delete "+compactedIndex);
+        }
+
+        Map<Integer,Extent> extents = new HashMap<Integer,Extent>();
+        long covered = loadIndex(index,extents);
+        if(covered>length) {
+            // the index is of a different segment, so none of its offsets can be trusted
+            extents.clear();
+            covered = 0;
+        }
+        if(covered!=length) {
+            // the index is missing or behind the segment, presumably because we crashed
+            // between appending records and rewriting the index. recover by scanning.
+            LOGGER.info("Recovering the offset index of "+segment);
+            covered = scan(extents,covered);
+            if(covered<length)
+                truncate(covered);  // drop the partially written record
+            saveIndex(extents,covered,Durability.BATCH);
+        }
+        state = mapAll(covered,extents);
+    }
+
+    /**
+     * Loads the offset index.
+     *
+     * @return
+     *      the length of the segment that the index covers, or 0 if the index is unusable.
+     */
+    private long loadIndex(File index, Map<Integer,Extent> extents) {
+        if(!index.exists())
+            return 0;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+            try {
+                if(in.readInt()!=INDEX_MAGIC)
+                    return 0;
+                long covered = in.readLong();
+                int n = in.readInt();
+                for( int i=0; i<n; i++ ) {
+                    int id = in.readInt();
+                    long offset = in.readLong();
+                    int len = in.readInt();
+                    extents.put(id,new Extent(offset,len));
+                }
+                return covered;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            extents.clear();
+            return 0;
+        }
+    }
+
+    private void saveIndex(Map<Integer,Extent> extents, long covered, Durability durability) throws IOException {
+        saveIndex(index,extents,covered,durability);
+    }
+
+    private void saveIndex(File index, Map<Integer,Extent> extents, long covered, Durability durability) throws IOException {
+        File tmp = new File(index.getPath()+".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        try {
+            out.writeInt(INDEX_MAGIC);
+            out.writeLong(covered);
+            out.writeInt(extents.size());
+            for (Entry<Integer,Extent> e : extents.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeLong(e.getValue().offset);
+                out.writeInt(e.getValue().length);
+            }
+            out.flush();
+            if(durability!=Durability.NONE)
+                fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        FileUtil.rename(tmp,index);
+    }
+
+    /**
+     * Reads records from the given position of the segment to rebuild the offset index.
+     *
+     * @return
+     *      the end position of the last complete record.
+     */
+    private long scan(Map<Integer,Extent> extents, long pos) throws IOException {
+        if(!segment.exists())
+            return 0;
+        RandomAccessFile raf = new RandomAccessFile(segment,"r");
+        try {
+            long len = raf.length();
+            while(pos+RECORD_HEADER<=len) {
+                raf.seek(pos);
+                int id = raf.readInt();
+                int size = raf.readInt();
+                if(size<0 || pos+RECORD_HEADER+size>len)
+                    break;  // incomplete record
+                extents.put(id,new Extent(pos+RECORD_HEADER,size));
+                pos += RECORD_HEADER+size;
+            }
+            return pos;
+        } catch (EOFException e) {
+            return pos;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(segment,"rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps the whole segment of the given length in one region.
+     */
+    private State mapAll(long length, Map<Integer,Extent> extents) throws IOException {
+        if(length==0)
+            return new State(new ByteBuffer[0],new long[0],0,extents);
+        return new State(new ByteBuffer[]{map(0,length)},new long[]{0},length,extents);
+    }
+
+    private ByteBuffer map(long from, long to) throws IOException {
+        if(to>Integer.MAX_VALUE)
+            throw new IOException(segment+" is too large to be mapped");
+        RandomAccessFile raf = new RandomAccessFile(segment,"r");
+        try {
+            // the mapping stays valid after the channel is closed
+            return raf.getChannel().map(MapMode.READ_ONLY,from,to-from);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public Set<Integer> list() {
+        return new HashSet<Integer>(state.extents.keySet());
+    }
+
+    public InputStream read(int id) {
+        State s = state;
+        Extent e = s.extents.get(id);
+        if(e==null)
+            return null;
+        return new ByteBufferInputStream(s.slice(e));
+    }
+
+    /**
+     * Appends the given XML records to the segment.
+     *
+     * <p>
+     * The records become visible only when the offset index is replaced afterward,
+     * so a crash in the middle leaves the previous state intact. Since everything
+     * goes into one file, {@link Durability#BATCH} and {@link Durability#PER_FILE}
+     * differ in whether the segment is forced after each record or just once.
+     */
+    public synchronized void write(Map<Integer,byte[]> records, Durability durability) throws IOException {
+        if(records.isEmpty())
+            return;
+
+        State s = state;
+        Map<Integer,Extent> extents = new HashMap<Integer,Extent>(s.extents);
+        long start, pos;
+        RandomAccessFile raf = new RandomAccessFile(segment,"rw");
+        try {
+            pos = start = raf.length();
+            raf.seek(pos);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(raf.getFD())));
+            for (Entry<Integer,byte[]> e : records.entrySet()) {
+                byte[] data = e.getValue();
+                out.writeInt(e.getKey());
+                out.writeInt(data.length);
+                out.write(data);
+                extents.put(e.getKey(),new Extent(pos+RECORD_HEADER,data.length));
+                pos += RECORD_HEADER+data.length;
+                if(durability==Durability.PER_FILE) {
+                    out.flush();
+                    raf.getFD().sync();
+                }
+            }
+            out.flush();
+            if(durability==Durability.BATCH)
+                raf.getFD().sync();
+        } finally {
+            raf.close();
+        }
+        saveIndex(extents,pos,durability);
+        if(start==s.length && s.chunks.length<MAX_CHUNKS)
+            state = s.append(map(start,pos),pos,extents);
+        else
+            state = mapAll(pos,extents);
+
+        if(needsCompaction(extents,pos))
+            compact();
+    }
+
+    private boolean needsCompaction(Map<Integer,Extent> extents, long length) {
+        long live = 0;
+        for (Extent e : extents.values())
+            live += RECORD_HEADER+e.length;
+        long dead = length-live;
+        return dead>live && dead>COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Rewrites the segment with only the live records.
+     */
+    public synchronized void compact() throws IOException {
+        State s = state;
+        File tmp = new File(segment.getPath()+".tmp");
+        Map<Integer,Extent> extents = new HashMap<Integer,Extent>();
+        long pos = 0;
+        FileOutputStream fos = new FileOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        try {
+            byte[] buf = new byte[0];
+            for (Entry<Integer,Extent> e : s.extents.entrySet()) {
+                Extent x = e.getValue();
+                if(buf.length<x.length)
+                    buf = new byte[x.length];
+                s.slice(x).get(buf,0,x.length);
+                out.writeInt(e.getKey());
+                out.writeInt(x.length);
+                out.write(buf,0,x.length);
+                extents.put(e.getKey(),new Extent(pos+RECORD_HEADER,x.length));
+                pos += RECORD_HEADER+x.length;
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        // see open() for how a crash between these renames is recovered
+        saveIndex(compactedIndex,extents,pos,Durability.BATCH);
+        FileUtil.rename(tmp,segment);
+        FileUtil.rename(compactedIndex,index);
+        state = mapAll(pos,extents);
+    }
+
+    /**
+     * Copies all the issues from another store into this store.
+     */
+    public void importFrom(IssueStore src) throws IOException {
+        Map<Integer,byte[]> records = new HashMap<Integer,byte[]>();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (Integer id : src.list()) {
+            InputStream in = src.read(id);
+            if(in==null)    continue;
+            try {
+                baos.reset();
+                int len;
+                while((len=in.read(buf))>=0)
+                    baos.write(buf,0,len);
+            } finally {
+                in.close();
+            }
+            records.put(id,baos.toByteArray());
+
+            if(records.size()>=IMPORT_BATCH) {
+                write(records,Durability.NONE);
+                records.clear();
+            }
+        }
+        write(records,Durability.BATCH);
+    }
+
+    /**
+     * Unmaps the segment. Streams returned from {@link #read(int)} must not be used afterward.
+     */
+    public synchronized void close() {
+        State s = state;
+        state = State.EMPTY;
+        for (ByteBuffer buf : s.chunks)
+            unmap(buf);
+    }
+
+    /**
+     * Releases the mapping right away instead of waiting for the garbage collector,
+     * through the JDK internal cleaner if it's accessible, like Lucene's MMapDirectory.
+     */
+    private static void unmap(ByteBuffer buf) {
+        try {
+            Method cleaner = buf.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object c = cleaner.invoke(buf);
+            if(c!=null)
+                c.getClass().getMethod("clean").invoke(c);
+        } catch (Exception e) {
+            // not available on this JVM. the mapping goes away when the buffer is collected
+            LOGGER.log(Level.FINE, "Failed to unmap "+buf, e);
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        public int read() {
+            return buf.hasRemaining() ? buf.get()&0xFF : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if(len==0)  return 0;
+            if(!buf.hasRemaining())  return -1;
+            len = Math.min(len,buf.remaining());
+            buf.get(b,off,len);
+            return len;
+        }
+
+        public int available() {
+            return buf.remaining();
+        }
+
+        public long skip(long n) {
+            int k = (int)Math.max(0,Math.min(n,buf.remaining()));
+            buf.position(buf.position()+k);
+            return k;
+        }
+    }
+
+    static final String SEGMENT_FILE = "issues.seg";
+
+    private static final int INDEX_MAGIC = 0x4f495431; // "OIT1"
+
+    /**
+     * Issue ID and the record length.
+     */
+    private static final int RECORD_HEADER = 8;
+
+    private static final long COMPACTION_THRESHOLD = 1024*1024;
+
+    private static final int IMPORT_BATCH = 1000;
+
+    /**
+     * Number of mapped regions at which the whole segment is mapped again.
+     */
+    private static final int MAX_CHUNKS = 64;
+
+    private static final Logger LOGGER = Logger.getLogger(SegmentStore.class.getName());
+}
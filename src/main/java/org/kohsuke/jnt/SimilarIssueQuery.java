@@ -0,0 +1,168 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DefaultSimilarity;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.PriorityQueue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a query that finds issues similar to the given one, from its most characteristic terms.
+ *
+ * <p>
+ * The terms of the summary and the descriptions are weighted by tf-idf against the search index,
+ * and the best ones of each field are searched in the same field of the other issues,
+ * with boosts proportional to their weights, the way Lucene's MoreLikeThis does.
+ * Terms of the "contents" field come from its term vector if the index has them
+ * (see {@link IndexOptions#getTermVector()}), or else by analyzing the issue.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class SimilarIssueQuery {
+    private final IndexReader reader;
+    private final IndexOptions options;
+    private final Similarity similarity = new DefaultSimilarity();
+
+    /**
+     * Number of terms in the query per field.
+     */
+    int maxTerms = 25;
+
+    /**
+     * Terms that don't appear in any other issue don't help finding similar ones.
+     */
+    int minDocFreq = 2;
+
+    /**
+     * @param options
+     *      Options the index was built with, so that the terms are picked from the same text.
+     */
+    SimilarIssueQuery(IndexReader reader, IndexOptions options) {
+        this.reader = reader;
+        this.options = options;
+    }
+
+    /**
+     * @param fieldBoosts
+     *      Fields to search, "summary" and/or "contents", and their boosts.
+     *      The key terms of each field are picked from the same field of the given issue.
+     * @return
+     *      null if the issue has no terms to go by.
+     */
+    Query build(JNIssue issue, Map<String,Float> fieldBoosts) throws IOException {
+        BooleanQuery query = new BooleanQuery();
+        for (Map.Entry<String,Float> f : fieldBoosts.entrySet()) {
+            ScoredTerm[] terms = keyTerms(f.getKey(),termFreqs(issue,f.getKey()));
+            for (ScoredTerm t : terms) {
+                TermQuery tq = new TermQuery(new Term(f.getKey(),t.text));
+                tq.setBoost(f.getValue()*t.score/terms[0].score);
+                query.add(tq,Occur.SHOULD);
+            }
+        }
+        if(query.clauses().isEmpty())
+            return null;
+
+        // the issue is the most similar to itself
+        query.add(NumericRangeQuery.newIntRange("id",issue.getId(),issue.getId(),true,true),Occur.MUST_NOT);
+        return query;
+    }
+
+    /**
+     * Picks the terms with the highest tf-idf, the best first.
+     */
+    private ScoredTerm[] keyTerms(String field, Map<String,Integer> freqs) throws IOException {
+        int numDocs = reader.numDocs();
+        TermQueue q = new TermQueue(maxTerms);
+        for (Map.Entry<String,Integer> e : freqs.entrySet()) {
+            int df = reader.docFreq(new Term(field,e.getKey()));
+            if(df<minDocFreq)
+                continue;   // too rare to be shared with another issue. common terms are left to idf, which ranks them last
+            q.insertWithOverflow(new ScoredTerm(e.getKey(),e.getValue()*similarity.idf(df,numDocs)));
+        }
+
+        ScoredTerm[] terms = new ScoredTerm[q.size()];
+        for( int i=terms.length-1; i>=0; i-- )
+            terms[i] = q.pop();
+        return terms;
+    }
+
+    private Map<String,Integer> termFreqs(JNIssue issue, String field) throws IOException {
+        List<String> terms;
+        if(field.equals("contents")) {
+            Map<String,Integer> freqs = termFreqVector(issue.getId());
+            if(freqs!=null)
+                return freqs;
+            terms = IssueDocument.analyzeContents(issue,options.getMaxAnalyzedChars());
+        } else
+        if(field.equals("summary")) {
+            terms = IssueDocument.analyzeSummary(issue);
+        } else
+            throw new IllegalArgumentException("Unsupported field: "+field);
+
+        Map<String,Integer> freqs = new HashMap<String,Integer>();
+        for (String t : terms) {
+            Integer f = freqs.get(t);
+            freqs.put(t,f==null?1:f+1);
+        }
+        return freqs;
+    }
+
+    /**
+     * Reads the term vector of the "contents" field of the given issue, if the index has it.
+     */
+    private Map<String,Integer> termFreqVector(int id) throws IOException {
+        TermDocs td = reader.termDocs(IssueDocument.idTerm(id));
+        try {
+            if(!td.next())
+                return null;
+            TermFreqVector v = reader.getTermFreqVector(td.doc(),"contents");
+            if(v==null)
+                return null;
+            Map<String,Integer> r = new HashMap<String,Integer>();
+            String[] terms = v.getTerms();
+            int[] freqs = v.getTermFrequencies();
+            for( int i=0; i<terms.length; i++ )
+                r.put(terms[i],freqs[i]);
+            return r;
+        } finally {
+            td.close();
+        }
+    }
+
+    private static final class ScoredTerm {
+        final String text;
+        final float score;
+
+        ScoredTerm(String text, float score) {
+            this.text = text;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Keeps the lowest scoring term at the top.
+     */
+    private static final class TermQueue extends PriorityQueue<ScoredTerm> {
+        TermQueue(int size) {
+            initialize(size);
+        }
+
+        protected boolean lessThan(ScoredTerm a, ScoredTerm b) {
+            if(a.score!=b.score)
+                return a.score<b.score;
+            return a.text.compareTo(b.text)>0;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package org.kohsuke.jnt;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.FieldComparatorSource;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-issue values of the sortable header fields, kept column-wise on disk and memory-mapped.
+ *
+ * <p>
+ * Each column is a file of longs indexed by the issue ID. Sorting looks up the issue ID of
+ * each hit from the per-segment {@link FieldCache} of the numeric "id" field, then reads the
+ * value straight from the mapped column. So sorting doesn't create any object per document,
+ * and refreshing the index doesn't invalidate anything but the ID cache of the new segments.
+ *
+ * <p>
+ * The columns are derived from the issues just like the search index, and they are
+ * rewritten whenever the index is rebuilt. The new values go to separate files that replace
+ * the current ones only when the new index is committed, so sorting keeps working with
+ * the current index while it's being rebuilt, and after a failed rebuild.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class SortColumns {
+    /**
+     * How to obtain the value of a column from an issue.
+     */
+    private static abstract class Extractor {
+        abstract long get(JNIssue issue);
+    }
+
+    private static final class Column {
+        final File file;
+        final Extractor extractor;
+        /**
+         * Replaced as a whole when the file is grown, so that the searches in progress keep using the old mapping.
+         */
+        volatile LongBuffer values = LongBuffer.allocate(0);
+        /**
+         * The mapping behind {@link #values}. Null if nothing is mapped.
+         */
+        private MappedByteBuffer buffer;
+
+        Column(File file, Extractor extractor) {
+            this.file = file;
+            this.extractor = extractor;
+        }
+
+        void put(int id, long value) throws IOException {
+            if(id<0)    return;
+            if(id>=values.limit())
+                map(id+1);
+            values.put(id,value);
+        }
+
+        /**
+         * Maps the file, growing it so that it can hold at least the given number of values.
+         */
+        void map(int size) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file,"rw");
+            try {
+                long len = raf.length()/8;
+                if(len<size) {
+                    len = Math.max(INITIAL_SIZE,Integer.highestOneBit(size-1)<<1);
+                    raf.setLength(len*8);
+                }
+                // the mapping stays valid after the file is closed
+                buffer = raf.getChannel().map(MapMode.READ_WRITE,0,len*8);
+                values = buffer.asLongBuffer();
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    private final File dir;
+    private final Map<String,Column> columns = new LinkedHashMap<String,Column>();
+
+    /**
+     * Columns being rebuilt, which replace the values of {@link #columns} when committed.
+     * Null unless the index is being rebuilt.
+     */
+    private Map<String,Column> rebuilding;
+
+    SortColumns(File dir) throws IOException {
+        this.dir = dir;
+        add("votes",new Extractor() {
+            long get(JNIssue issue) {
+                return issue.getVotes();
+            }
+        });
+        add("priority",new Extractor() {
+            long get(JNIssue issue) {
+                return ordinal(issue.getPriority());
+            }
+        });
+        add("created",new Extractor() {
+            long get(JNIssue issue) {
+                return issue.getCreationDate().getTimeInMillis();
+            }
+        });
+        add("lastmodified",new Extractor() {
+            long get(JNIssue issue) {
+                return issue.getLastModified().getTimeInMillis();
+            }
+        });
+
+        if(exists()) {
+            for (Column c : columns.values())
+                c.map(0);
+        }
+    }
+
+    private void add(String name, Extractor e) {
+        columns.put(name,new Column(new File(dir,name+".col"),e));
+    }
+
+    private static long ordinal(Enum e) {
+        return e==null ? 0 : e.ordinal()+1;
+    }
+
+    /**
+     * Returns true if all the columns are on disk.
+     */
+    boolean exists() {
+        for (Column c : columns.values())
+            if(!c.file.exists())
+                return false;
+        return true;
+    }
+
+    /**
+     * Records the values of the given issue.
+     * Call {@link #flush()} afterward to make them durable.
+     */
+    synchronized void put(JNIssue issue) throws IOException {
+        for (Column c : (rebuilding!=null ? rebuilding : columns).values())
+            c.put(issue.getId(),c.extractor.get(issue));
+    }
+
+    synchronized void putAll(Collection<JNIssue> issues) throws IOException {
+        for (JNIssue issue : issues)
+            put(issue);
+        flush();
+    }
+
+    /**
+     * Writes the modified values to the disk.
+     */
+    synchronized void flush() {
+        for (Column c : columns.values())
+            if(c.buffer!=null)
+                c.buffer.force();
+    }
+
+    /**
+     * Starts recording every issue afresh into new columns, while the current columns stay in use.
+     * Must be followed by {@link #commitRebuild()} or {@link #abortRebuild()}.
+     */
+    synchronized void startRebuild() throws IOException {
+        dir.mkdirs();
+        rebuilding = new LinkedHashMap<String,Column>();
+        for (Map.Entry<String,Column> e : columns.entrySet()) {
+            Column c = new Column(new File(dir,e.getKey()+".col.new"),e.getValue().extractor);
+            c.file.delete();    // left by an earlier crash
+            c.map(0);
+            rebuilding.put(e.getKey(),c);
+        }
+    }
+
+    /**
+     * Replaces the current columns by the rebuilt ones, once the rebuilt index is committed.
+     */
+    synchronized void commitRebuild() throws IOException {
+        for (Map.Entry<String,Column> e : rebuilding.entrySet()) {
+            Column c = columns.get(e.getKey());
+            e.getValue().buffer.force();
+            FileUtil.rename(e.getValue().file,c.file);
+            // the comparators refer to the current column, so it's remapped in place
+            c.map(0);
+        }
+        rebuilding = null;
+    }
+
+    /**
+     * Discards the rebuilt columns after the rebuilt index is rolled back.
+     */
+    synchronized void abortRebuild() {
+        if(rebuilding==null)    return;
+        for (Column c : rebuilding.values())
+            c.file.delete();
+        rebuilding = null;
+    }
+
+    /**
+     * Parses the sort specification, which is a comma-separated list of field names,
+     * each of which is optionally preceded by '-' to sort in the descending order.
+     * For example, "-votes,id".
+     */
+    Sort parseSort(String spec) {
+        return parseSort(spec,this);
+    }
+
+    /**
+     * Parses the sort specification like {@link #parseSort(String)}.
+     *
+     * @param columns
+     *      If null, sort by the values in the index, which works across the indexes of multiple projects.
+     */
+    static Sort parseSort(String spec, SortColumns columns) {
+        List<SortField> fields = new ArrayList<SortField>();
+        for (String token : spec.split(",")) {
+            token = token.trim();
+            if(token.length()==0)   continue;
+            boolean reverse = token.startsWith("-");
+            if(reverse)
+                token = token.substring(1);
+            fields.add(sortField(columns,token,reverse));
+        }
+        if(fields.isEmpty())
+            fields.add(sortField(columns,"id",false));
+        return new Sort(fields.toArray(new SortField[fields.size()]));
+    }
+
+    /**
+     * Creates a {@link SortField} that uses the column if there's one for the given field.
+     */
+    private static SortField sortField(SortColumns columns, String field, boolean reverse) {
+        Column c = columns==null ? null : columns.columns.get(field);
+        if(c==null)
+            return IssueDocument.sortField(field,reverse);
+        return new SortField(field,new ColumnComparatorSource(c),reverse);
+    }
+
+    private static final class ColumnComparatorSource extends FieldComparatorSource {
+        private final transient Column column;
+
+        ColumnComparatorSource(Column column) {
+            this.column = column;
+        }
+
+        public FieldComparator newComparator(String fieldname, int numHits, int sortPos, boolean reversed) {
+            return new ColumnComparator(column,numHits);
+        }
+    }
+
+    private static final class ColumnComparator extends FieldComparator<Long> {
+        private final Column column;
+        private final long[] slots;
+        private long bottom;
+        /**
+         * Issue IDs of the documents in the current segment.
+         */
+        private int[] ids;
+        /**
+         * Snapshot of the column for the current segment.
+         */
+        private LongBuffer values;
+
+        ColumnComparator(Column column, int numHits) {
+            this.column = column;
+            this.slots = new long[numHits];
+        }
+
+        private long valueOf(int doc) {
+            int id = ids[doc];
+            return id<values.limit() ? values.get(id) : 0;
+        }
+
+        public int compare(int slot1, int slot2) {
+            return compare(slots[slot1],slots[slot2]);
+        }
+
+        public void setBottom(int slot) {
+            bottom = slots[slot];
+        }
+
+        public int compareBottom(int doc) {
+            return compare(bottom,valueOf(doc));
+        }
+
+        public void copy(int slot, int doc) {
+            slots[slot] = valueOf(doc);
+        }
+
+        public void setNextReader(IndexReader reader, int docBase) throws IOException {
+            ids = FieldCache.DEFAULT.getInts(reader,"id",FieldCache.NUMERIC_UTILS_INT_PARSER);
+            values = column.values;
+        }
+
+        public Long value(int slot) {
+            return slots[slot];
+        }
+
+        private static int compare(long x, long y) {
+            return x<y ? -1 : x==y ? 0 : 1;
+        }
+    }
+
+    /**
+     * Number of values that a column file is initially sized for.
+     */
+    private static final int INITIAL_SIZE = 1024;
+}
@@ -0,0 +1,195 @@
+package org.kohsuke.jnt;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link IssueStore} that keeps one "%05d.xml" file per issue.
+ *
+ * <p>
+ * This is the original layout of the offline issue tracker.
+ * Each file is written to a temporary file first, then renamed into its final name.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class XmlFileStore implements IssueStore {
+    private final File dir;
+
+    private volatile int writerThreads = Runtime.getRuntime().availableProcessors();
+
+    public XmlFileStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Number of threads used to write files in parallel.
+     */
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public void setWriterThreads(int n) {
+        if(n<=0)
+            throw new IllegalArgumentException("Invalid number of threads: "+n);
+        this.writerThreads = n;
+    }
+
+    /**
+     * Lists up legal issue IDs from the disk.
+     */
+    public Set<Integer> list() {
+        Set<Integer> issueList = new HashSet<Integer>();
+        for(File xml : listXmlFiles()) {
+            String n = xml.getName();
+            n = n.substring(0,n.length()-4);
+            try {
+                issueList.add(Integer.parseInt(n));
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+        return issueList;
+    }
+
+    /**
+     * List up all the issue XML files.
+     */
+    private File[] listXmlFiles() {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".xml");
+            }
+        });
+        return files!=null ? files : new File[0];
+    }
+
+    public InputStream read(int id) throws IOException {
+        File f = getFile(id);
+        if(!f.exists())
+            return null;
+        return new FileInputStream(f);
+    }
+
+    public void write(Map<Integer,byte[]> records, final Durability durability) throws IOException {
+        // write everything into temporary files first
+        List<Callable<Void>> writes = new ArrayList<Callable<Void>>(records.size());
+        for (final Entry<Integer,byte[]> e : records.entrySet()) {
+            writes.add(new Callable<Void>() {
+                public Void call() throws IOException {
+                    File tmp = getTempFile(e.getKey());
+                    FileOutputStream out = new FileOutputStream(tmp);
+                    try {
+                        out.write(e.getValue());
+                        if(durability==Durability.PER_FILE)
+                            out.getFD().sync();
+                    } finally {
+                        out.close();
+                    }
+                    if(durability!=Durability.BATCH)
+                        FileUtil.rename(tmp,getFile(e.getKey()));
+                    return null;
+                }
+            });
+        }
+        invokeAll(writes);
+
+        if(durability==Durability.BATCH) {
+            // force all the files in one go, so that the disk can coalesce them, then publish them all.
+            // Java has no way to fsync the directory itself, so the renames are left to the file system.
+            List<Callable<Void>> syncs = new ArrayList<Callable<Void>>(records.size());
+            for (final Integer id : records.keySet()) {
+                syncs.add(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        RandomAccessFile raf = new RandomAccessFile(getTempFile(id),"rw");
+                        try {
+                            raf.getFD().sync();
+                        } finally {
+                            raf.close();
+                        }
+                        return null;
+                    }
+                });
+            }
+            invokeAll(syncs);
+
+            for (Integer id : records.keySet())
+                FileUtil.rename(getTempFile(id),getFile(id));
+        }
+    }
+
+    /**
+     * Runs the given tasks by using up to {@link #writerThreads} threads.
+     */
+    private void invokeAll(Collection<Callable<Void>> tasks) throws IOException {
+        int n = Math.min(writerThreads,tasks.size());
+        if(n<=1) {
+            for (Callable<Void> t : tasks) {
+                try {
+                    t.call();
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new Error(e); // impossible
+                }
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(n,new DaemonThreadFactory("issue writer"));
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks))
+                f.get();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if(t instanceof IOException)
+                throw (IOException)t;
+            if(t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            throw new Error(t);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException)new IOException("Interrupted while writing issues").initCause(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Deletes all the issue XML files, after their contents are moved elsewhere.
+     */
+    void deleteAll() throws IOException {
+        for (File xml : listXmlFiles()) {
+            if(!xml.delete())
+                throw new IOException("Failed to delete "+xml);
+        }
+    }
+
+    public void close() {
+        // nothing to release
+    }
+
+    File getFile(int id) {
+        return new File(dir,String.format("%05d.xml", id));
+    }
+
+    private File getTempFile(int id) {
+        return new File(dir,String.format("%05d.xml.tmp", id));
+    }
+}
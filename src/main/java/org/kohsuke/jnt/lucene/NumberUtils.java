@@ -101,7 +101,7 @@ public class NumberUtils {
   }
 
   public static double SortableStr2double(String val) {
-    long f = SortableStr2long(val,0,6);
+    long f = SortableStr2long(val,0,5);
     if (f<0) f ^= 0x7fffffffffffffffL;
     return Double.longBitsToDouble(f);
   }
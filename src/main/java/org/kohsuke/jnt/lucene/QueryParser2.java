@@ -5,23 +5,46 @@ import org.apache.lucene.queryParser.CharStream;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.queryParser.QueryParserTokenManager;
-import org.apache.lucene.search.ConstantScoreRangeQuery;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Version;
 
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
- * Runs {@link #getRangeQuery(String, String, String, boolean)} through
- * {@link NumberUtils} if it's a number field.
+ * Turns queries on numeric and date fields into {@link NumericRangeQuery}s,
+ * to match how they are indexed as trie-encoded numbers.
+ *
+ * <p>
+ * Dates can be written as "2008-07-09", "2008-07-09T13", or "2008-07-09T13:30"
+ * (or "20080709" for compatibility with older indexes), in the local time zone.
+ * A date stands for the whole day, hour, or minute that it denotes, so
+ * "lastmodified:[2008-07-01 TO 2008-07-09]" includes everything modified on July 9th,
+ * and "created:2008-07-09" matches anything created on that day.
  *
  * @author Kohsuke Kawaguchi
  */
 public class QueryParser2 extends QueryParser {
     private final Set<String> intFields = new HashSet<String>();
+    private final Set<String> dateFields = new HashSet<String>();
+    private Map<String,Float> defaultFieldBoosts;
+
+    /**
+     * True while a query on the default field is being expanded to {@link #defaultFieldBoosts}.
+     */
+    private boolean expanding;
 
-    public QueryParser2(String f, Analyzer a) {
-        super(f, a);
+    public QueryParser2(Version v, String f, Analyzer a) {
+        super(v, f, a);
     }
 
     public QueryParser2(CharStream stream) {
@@ -36,15 +59,151 @@ public class QueryParser2 extends QueryParser {
         this.intFields.add(n);
     }
 
+    /**
+     * Adds a field that's indexed as a long value of milliseconds since the epoch.
+     */
+    public void addDateField(String n) {
+        this.dateFields.add(n);
+    }
+
+    /**
+     * Searches terms and phrases that don't specify a field in all the given fields,
+     * each with its boost, instead of just the default field. For example, with
+     * {summary:4, contents:1}, "foo" means "summary:foo^4 contents:foo".
+     */
+    public void setDefaultFieldBoosts(Map<String,Float> boosts) {
+        this.defaultFieldBoosts = new LinkedHashMap<String,Float>(boosts);
+    }
+
+    protected Query getFieldQuery(String field, String queryText, int slop) throws ParseException {
+        if(!isExpanded(field))
+            return super.getFieldQuery(field, queryText, slop);
+
+        BooleanQuery q = new BooleanQuery(true);
+        expanding = true;
+        try {
+            for (Map.Entry<String,Float> e : defaultFieldBoosts.entrySet())
+                add(q,super.getFieldQuery(e.getKey(),queryText,slop),e.getValue());
+        } finally {
+            expanding = false;
+        }
+        return q.clauses().isEmpty() ? null : q;
+    }
+
+    private boolean isExpanded(String field) {
+        return defaultFieldBoosts!=null && !expanding && field.equals(getField());
+    }
+
+    private static void add(BooleanQuery q, Query c, float boost) {
+        if(c==null) return; // all stop words
+        c.setBoost(boost);
+        q.add(c,Occur.SHOULD);
+    }
+
+    protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+        if(isExpanded(field)) {
+            BooleanQuery q = new BooleanQuery(true);
+            expanding = true;
+            try {
+                for (Map.Entry<String,Float> e : defaultFieldBoosts.entrySet())
+                    add(q,getFieldQuery(e.getKey(),queryText,quoted),e.getValue());
+            } finally {
+                expanding = false;
+            }
+            return q.clauses().isEmpty() ? null : q;
+        }
+        if(intFields.contains(field)) {
+            Integer i = parseInt(queryText);
+            return NumericRangeQuery.newIntRange(field,i,i,true,true);
+        }
+        if(dateFields.contains(field)) {
+            long[] r = parseDate(queryText);
+            return NumericRangeQuery.newLongRange(field,r[0],r[1]-1,true,true);
+        }
+        return super.getFieldQuery(field, queryText, quoted);
+    }
 
     protected Query getRangeQuery(String field, String part1, String part2, boolean inclusive) throws ParseException {
         if(intFields.contains(field)) {
-            if(part1.equals("*"))   part1=null;
-            else                    part1 = NumberUtils.int2sortableStr(part1);
-            if(part2.equals("*"))   part2=null;
-            else                    part2 = NumberUtils.int2sortableStr(part2);
-            return new ConstantScoreRangeQuery(field,part1,part2,inclusive,inclusive);
+            return NumericRangeQuery.newIntRange(field,
+                    isOpen(part1) ? null : parseInt(part1),
+                    isOpen(part2) ? null : parseInt(part2),
+                    inclusive,inclusive);
+        }
+        if(dateFields.contains(field)) {
+            Long lower=null,upper=null;
+            if(!isOpen(part1)) {
+                long[] r = parseDate(part1);
+                lower = inclusive ? r[0] : r[1];
+            }
+            if(!isOpen(part2)) {
+                long[] r = parseDate(part2);
+                upper = inclusive ? r[1]-1 : r[0]-1;
+            }
+            return NumericRangeQuery.newLongRange(field,lower,upper,true,true);
         }
         return super.getRangeQuery(field, part1, part2, inclusive);
     }
+
+    private static boolean isOpen(String part) {
+        return part==null || part.equals("*");
+    }
+
+    private static Integer parseInt(String s) throws ParseException {
+        try {
+            return Integer.valueOf(s);
+        } catch (NumberFormatException e) {
+            throw new ParseException("Not a number: "+s);
+        }
+    }
+
+    /**
+     * Parses a date into the range of time that it denotes.
+     *
+     * @return
+     *      two-element array of the start time (inclusive) and the end time (exclusive)
+     */
+    static long[] parseDate(String s) throws ParseException {
+        s = s.toUpperCase();    // the query parser may have lower-cased 'T'
+        SimpleDateFormat[] formats = FORMATS.get();
+        for (int i=0; i<DATE_FORMATS.length; i++) {
+            SimpleDateFormat f = formats[i];
+            ParsePosition pos = new ParsePosition(0);
+            Date d = f.parse(s,pos);
+            if(d==null || pos.getIndex()!=s.length())
+                continue;
+
+            Calendar cal = Calendar.getInstance();
+            cal.setTime(d);
+            long start = cal.getTimeInMillis();
+            cal.add(DATE_UNITS[i],1);
+            return new long[]{start,cal.getTimeInMillis()};
+        }
+        throw new ParseException("Unrecognized date format: "+s+". Use yyyy-MM-dd, yyyy-MM-ddTHH, or yyyy-MM-ddTHH:mm");
+    }
+
+    private static final String[] DATE_FORMATS = {
+        "yyyy-MM-dd'T'HH:mm", "yyyy-MM-dd'T'HH", "yyyy-MM-dd", "yyyyMMddHHmm", "yyyyMMdd"
+    };
+
+    /**
+     * {@link SimpleDateFormat}s of {@link #DATE_FORMATS}, which are expensive to create but not thread-safe.
+     */
+    private static final ThreadLocal<SimpleDateFormat[]> FORMATS = new ThreadLocal<SimpleDateFormat[]>() {
+        protected SimpleDateFormat[] initialValue() {
+            SimpleDateFormat[] r = new SimpleDateFormat[DATE_FORMATS.length];
+            for (int i=0; i<r.length; i++) {
+                r[i] = new SimpleDateFormat(DATE_FORMATS[i]);
+                r[i].setLenient(false);
+            }
+            return r;
+        }
+    };
+
+    /**
+     * The precision of each of {@link #DATE_FORMATS}.
+     */
+    private static final int[] DATE_UNITS = {
+        Calendar.MINUTE, Calendar.HOUR_OF_DAY, Calendar.DAY_OF_MONTH, Calendar.MINUTE, Calendar.DAY_OF_MONTH
+    };
 }
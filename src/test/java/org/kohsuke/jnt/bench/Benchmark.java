@@ -0,0 +1,121 @@
+package org.kohsuke.jnt.bench;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Times one operation repeatedly and reports the throughput, the latency percentiles,
+ * and the allocation rate.
+ *
+ * <p>
+ * JMH requires Java 6, while this project still targets Java 5, so this is a minimal
+ * stand-in: each case is run for a number of warm-up iterations that are discarded,
+ * then for the measured iterations, each of which is timed individually.
+ *
+ * <p>
+ * Allocations are counted with HotSpot's per-thread allocation counter when it's available,
+ * and only cover the benchmarking thread. Work handed off to other threads isn't included.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public abstract class Benchmark {
+    private final String name;
+
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Called once before the warm-up.
+     */
+    protected void setUp() throws Exception {}
+
+    /**
+     * Performs the i-th iteration of the operation being measured.
+     */
+    protected abstract void run(int i) throws Exception;
+
+    /**
+     * Runs the benchmark and prints the result as one line.
+     */
+    public void measure(int warmup, int iterations, PrintStream out) throws Exception {
+        setUp();
+        for( int i=0; i<warmup; i++ )
+            run(i);
+
+        long[] nanos = new long[iterations];
+        long alloc0 = allocatedBytes();
+        long start = System.nanoTime();
+        for( int i=0; i<iterations; i++ ) {
+            long t = System.nanoTime();
+            run(warmup+i);
+            nanos[i] = System.nanoTime()-t;
+        }
+        long elapsed = System.nanoTime()-start;
+        long alloc = allocatedBytes()-alloc0;
+
+        Arrays.sort(nanos);
+        double seconds = elapsed/1e9;
+        out.printf("%-32s %10.1f ops/s  p50=%s p90=%s p99=%s max=%s  alloc=%s/op (%s/s)%n",
+                name,
+                iterations/seconds,
+                time(percentile(nanos,0.50)),
+                time(percentile(nanos,0.90)),
+                time(percentile(nanos,0.99)),
+                time(nanos[nanos.length-1]),
+                alloc0<0 ? "n/a" : bytes(alloc/(double)iterations),
+                alloc0<0 ? "n/a" : bytes(alloc/seconds));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length-1,(int)Math.ceil(p*sorted.length)-1)];
+    }
+
+    private static String time(long nanos) {
+        if(nanos<10*1000L)          return nanos+"ns";
+        if(nanos<10*1000*1000L)     return nanos/1000+"us";
+        if(nanos<10*1000*1000*1000L) return nanos/1000000+"ms";
+        return nanos/1000000000+"s";
+    }
+
+    private static String bytes(double b) {
+        if(b<10*1024)           return String.format("%.0fB",b);
+        if(b<10*1024*1024)      return String.format("%.0fKB",b/1024);
+        return String.format("%.0fMB",b/1024/1024);
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, or -1 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        if(GET_ALLOCATED_BYTES==null)
+            return -1;
+        try {
+            return (Long)GET_ALLOCATED_BYTES.invoke(THREAD_BEAN,Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    /**
+     * {@code com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long)}, which is HotSpot specific.
+     */
+    private static final Method GET_ALLOCATED_BYTES;
+
+    static {
+        Method m = null;
+        try {
+            Class<?> c = Class.forName("com.sun.management.ThreadMXBean");
+            if(c.isInstance(THREAD_BEAN))
+                m = c.getMethod("getThreadAllocatedBytes",long.class);
+        } catch (Exception e) {
+            // not available
+        }
+        GET_ALLOCATED_BYTES = m;
+    }
+}
@@ -0,0 +1,149 @@
+package org.kohsuke.jnt.bench;
+
+import org.kohsuke.jnt.Durability;
+import org.kohsuke.jnt.IssueStore;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates synthetic issues in the IssueZilla XML format, which is what
+ * {@code JNIssueTracker.load} parses and {@code JNIssue.save} writes.
+ *
+ * <p>
+ * The output is deterministic for the given seed, so that benchmark runs are comparable.
+ * Field values are skewed the way they are in real trackers: most issues have a few votes,
+ * a handful of subcomponents dominate, and descriptions vary in length.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class IssueGenerator {
+    private final String project;
+    private final long seed;
+
+    public IssueGenerator(String project, long seed) {
+        this.project = project;
+        this.seed = seed;
+    }
+
+    /**
+     * Writes issues #1 to #n into the given store.
+     */
+    public void populate(IssueStore store, int n) throws IOException {
+        Map<Integer,byte[]> records = new HashMap<Integer,byte[]>();
+        for( int id=1; id<=n; id++ ) {
+            records.put(id,generate(id));
+            if(records.size()>=BATCH) {
+                store.write(records,Durability.NONE);
+                records.clear();
+            }
+        }
+        store.write(records,Durability.BATCH);
+    }
+
+    /**
+     * Generates the XML of one issue.
+     */
+    public byte[] generate(int id) {
+        Random r = new Random(seed*31+id);
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        long created = EPOCH+id*HOUR+r.nextInt(3600)*1000L;
+        long modified = created+r.nextInt(365*24)*HOUR;
+
+        String status = pick(r,STATUSES);
+        boolean resolved = status.equals("RESOLVED") || status.equals("VERIFIED") || status.equals("CLOSED");
+
+        StringBuilder buf = new StringBuilder(4096);
+        buf.append("<issue status_code=\"200\" status_message=\"OK\">\n");
+        element(buf,"issue_id",String.valueOf(id));
+        element(buf,"issue_status",status);
+        element(buf,"priority","P"+(1+Math.min(4,(int)Math.abs(r.nextGaussian()*1.2+2))));
+        element(buf,"resolution",resolved ? pick(r,RESOLUTIONS) : "");
+        element(buf,"component",project);
+        element(buf,"version","current");
+        element(buf,"rep_platform","All");
+        element(buf,"assigned_to",user(r));
+        element(buf,"delta_ts",df.format(new Date(modified)));
+        element(buf,"subcomponent",SUBCOMPONENTS[Math.min(SUBCOMPONENTS.length-1,(int)Math.abs(r.nextGaussian()*3))]);
+        element(buf,"reporter",user(r));
+        element(buf,"target_milestone","milestone 1");
+        element(buf,"issue_type",pick(r,TYPES));
+        element(buf,"creation_ts",df.format(new Date(created)));
+        element(buf,"qa_contact","issues@"+project);
+        element(buf,"status_whiteboard","");
+        element(buf,"votes",String.valueOf(r.nextInt(8)==0 ? r.nextInt(50) : r.nextInt(3)));
+        element(buf,"op_sys","All");
+        element(buf,"short_desc",sentence(r,3+r.nextInt(8)));
+        element(buf,"keywords","");
+
+        int comments = 1+r.nextInt(6);
+        long when = created;
+        for( int i=0; i<comments; i++ ) {
+            buf.append("<long_desc>\n");
+            element(buf,"who",user(r));
+            element(buf,"issue_when",df.format(new Date(when)));
+            element(buf,"thetext",sentence(r,10+r.nextInt(i==0 ? 200 : 80)));
+            buf.append("</long_desc>\n");
+            when += r.nextInt(30*24)*HOUR;
+        }
+        buf.append("</issue>\n");
+
+        try {
+            return buf.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void element(StringBuilder buf, String name, String value) {
+        buf.append('<').append(name).append('>');
+        for( int i=0; i<value.length(); i++ ) {
+            char ch = value.charAt(i);
+            switch(ch) {
+            case '<':   buf.append("&lt;"); break;
+            case '>':   buf.append("&gt;"); break;
+            case '&':   buf.append("&amp;"); break;
+            default:    buf.append(ch);
+            }
+        }
+        buf.append("</").append(name).append(">\n");
+    }
+
+    private static String user(Random r) {
+        return "user"+(int)Math.abs(r.nextGaussian()*20);
+    }
+
+    private static String sentence(Random r, int words) {
+        StringBuilder buf = new StringBuilder();
+        for( int i=0; i<words; i++ ) {
+            if(i>0) buf.append(' ');
+            // Zipf-ish distribution, so that some words are much more common than others
+            buf.append(WORDS[Math.min(WORDS.length-1,(int)(WORDS.length*Math.pow(r.nextDouble(),3)))]);
+        }
+        return buf.toString();
+    }
+
+    private static String pick(Random r, String[] values) {
+        return values[r.nextInt(values.length)];
+    }
+
+    private static final String[] STATUSES = {"UNCONFIRMED","NEW","STARTED","REOPENED","RESOLVED","VERIFIED","CLOSED"};
+    private static final String[] RESOLUTIONS = {"FIXED","INVALID","WONTFIX","LATER","REMIND","DUPLICATE","WORKSFORME"};
+    private static final String[] TYPES = {"DEFECT","ENHANCEMENT","FEATURE","TASK","PATCH"};
+    private static final String[] SUBCOMPONENTS = {"core","www","maven","cvs","subversion","ant","remoting","test"};
+    private static final String[] WORDS = (
+        "the build fails with an exception when maven plugin is configured to run on slave node "+
+        "crash error timeout memory leak window layout font swing printer deadlock thread null pointer "+
+        "configuration page shows wrong status after restart cannot save job changes in the ui "+
+        "regression since upgrade jdk classloader permission remote agent workspace checkout svn cvs "+
+        "javadoc junit report trend graph email notification trigger schedule cron parameter matrix").split(" ");
+
+    private static final long EPOCH = 1167609600000L; // 2007-01-01
+    private static final long HOUR = 60*60*1000L;
+    private static final int BATCH = 1000;
+}
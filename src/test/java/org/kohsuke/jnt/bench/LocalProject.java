@@ -0,0 +1,210 @@
+package org.kohsuke.jnt.bench;
+
+import org.kohsuke.jnt.IssueResolution;
+import org.kohsuke.jnt.IssueStatus;
+import org.kohsuke.jnt.IssueType;
+import org.kohsuke.jnt.JNIssue;
+import org.kohsuke.jnt.JNIssueTracker;
+import org.kohsuke.jnt.JNProject;
+import org.kohsuke.jnt.JNUser;
+import org.kohsuke.jnt.JNVersion;
+import org.kohsuke.jnt.Priority;
+import org.kohsuke.jnt.ProcessingException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Project that only exists on the local disk, so that the benchmarks run without java.net.
+ *
+ * <p>
+ * Its issue tracker parses the XML written by {@link IssueGenerator} with the JDK's DOM parser,
+ * and never fetches anything.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class LocalProject extends JNProject {
+    private final String name;
+    private final JNIssueTracker tracker = new JNIssueTracker() {
+        public JNIssue load(int id, InputStream in) throws ProcessingException {
+            try {
+                return new LocalIssue(LocalProject.this,read(in));
+            } catch (IOException e) {
+                throw new ProcessingException(e);
+            }
+        }
+
+        public Map<Integer,JNIssue> getAll() {
+            return Collections.emptyMap();
+        }
+
+        public Map<Integer,JNIssue> getUpdatedIssues(Date since) {
+            return Collections.emptyMap();
+        }
+    };
+
+    public LocalProject(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public JNIssueTracker getIssueTracker() {
+        return tracker;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int len;
+        while((len=in.read(buf))>=0)
+            baos.write(buf,0,len);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Issue parsed from the IssueZilla XML.
+     */
+    private static final class LocalIssue extends JNIssue {
+        private final JNProject project;
+        private final byte[] xml;
+        private final Element root;
+
+        LocalIssue(JNProject project, byte[] xml) throws ProcessingException {
+            this.project = project;
+            this.xml = xml;
+            try {
+                DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+                this.root = db.parse(new ByteArrayInputStream(xml)).getDocumentElement();
+            } catch (Exception e) {
+                throw new ProcessingException(e);
+            }
+        }
+
+        private String get(String name) {
+            NodeList nl = root.getElementsByTagName(name);
+            return nl.getLength()==0 ? "" : nl.item(0).getTextContent();
+        }
+
+        private static <T extends Enum<T>> T get(Class<T> type, String value) {
+            return value.length()==0 ? null : Enum.valueOf(type,value);
+        }
+
+        private Calendar getDate(String name) {
+            try {
+                Calendar c = Calendar.getInstance();
+                c.setTime(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(get(name)));
+                return c;
+            } catch (ParseException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public JNProject getProject() {
+            return project;
+        }
+
+        public int getId() {
+            return Integer.parseInt(get("issue_id"));
+        }
+
+        public IssueType getType() {
+            return get(IssueType.class,get("issue_type"));
+        }
+
+        public IssueStatus getStatus() {
+            return get(IssueStatus.class,get("issue_status"));
+        }
+
+        public IssueResolution getResolution() {
+            return get(IssueResolution.class,get("resolution"));
+        }
+
+        public Priority getPriority() {
+            return get(Priority.class,get("priority"));
+        }
+
+        public JNUser getReporter() {
+            final String name = get("reporter");
+            return new JNUser() {
+                public String getName() {
+                    return name;
+                }
+            };
+        }
+
+        public JNVersion getVersion() {
+            final String name = get("version");
+            return new JNVersion() {
+                public String getName() {
+                    return name;
+                }
+            };
+        }
+
+        public Calendar getCreationDate() {
+            return getDate("creation_ts");
+        }
+
+        public Calendar getLastModified() {
+            return getDate("delta_ts");
+        }
+
+        public String getShortDescription() {
+            return get("short_desc");
+        }
+
+        public String getComponent() {
+            return get("component");
+        }
+
+        public String getSubComponent() {
+            return get("subcomponent");
+        }
+
+        public String getAssignedTo() {
+            return get("assigned_to");
+        }
+
+        public int getVotes() {
+            return Integer.parseInt(get("votes"));
+        }
+
+        public List<Description> getDescriptions() {
+            List<Description> r = new ArrayList<Description>();
+            NodeList nl = root.getElementsByTagName("long_desc");
+            for( int i=0; i<nl.getLength(); i++ ) {
+                Node text = ((Element)nl.item(i)).getElementsByTagName("thetext").item(0);
+                final String s = text==null ? "" : text.getTextContent();
+                r.add(new Description() {
+                    public String getText() {
+                        return s;
+                    }
+                });
+            }
+            return r;
+        }
+
+        public void save(OutputStream out) throws IOException {
+            out.write(xml);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.kohsuke.jnt.bench;
+
+import org.kohsuke.jnt.IssueDocument;
+import org.kohsuke.jnt.IssueFilter;
+import org.kohsuke.jnt.JNIssue;
+import org.kohsuke.jnt.JNProject;
+import org.kohsuke.jnt.OfflineIssueTracker;
+import org.kohsuke.jnt.SegmentStore;
+import org.kohsuke.jnt.XmlFileStore;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks loading, indexing, and searching issues against synthetic projects of various sizes.
+ *
+ * <p>
+ * Usage: {@code TrackerBenchmarks [-sizes 1000,10000,100000] [-work DIR] [-project NAME] [-segments]}
+ *
+ * <p>
+ * Issues are generated by {@link IssueGenerator} into a scratch directory and parsed by
+ * a {@link LocalProject}, so everything runs offline. With {@code -segments}, the generated issues are
+ * migrated into a {@link SegmentStore} before the measurement.
+ *
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:java}, and pass the options
+ * with {@code -Dexec.args="-sizes 1000,10000"}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class TrackerBenchmarks {
+    private final PrintStream out;
+    private final File work;
+    private final boolean segments;
+
+    public TrackerBenchmarks(File work, boolean segments, PrintStream out) {
+        this.work = work;
+        this.segments = segments;
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {1000,10000,100000};
+        File work = new File(System.getProperty("java.io.tmpdir"),"bokobai-bench");
+        String project = "hudson";
+        boolean segments = false;
+
+        for( int i=0; i<args.length; i++ ) {
+            if(args[i].equals("-sizes")) {
+                String[] tokens = args[++i].split(",");
+                sizes = new int[tokens.length];
+                for( int j=0; j<tokens.length; j++ )
+                    sizes[j] = Integer.parseInt(tokens[j]);
+            }
+            if(args[i].equals("-work"))
+                work = new File(args[++i]);
+            if(args[i].equals("-project"))
+                project = args[++i];
+            if(args[i].equals("-segments"))
+                segments = true;
+        }
+
+        JNProject p = new LocalProject(project);
+        TrackerBenchmarks b = new TrackerBenchmarks(work,segments,System.out);
+        for (int size : sizes)
+            b.run(p,size);
+    }
+
+    /**
+     * Runs all the benchmarks against a project with the given number of issues.
+     */
+    public void run(JNProject project, final int size) throws Exception {
+        out.printf("=== %d issues%n",size);
+        File home = new File(work,size+(segments?"-segments":""));
+        File dir = new File(home,project.getName());
+        if(!dir.exists()) {
+            out.println("Generating issues");
+            dir.mkdirs();
+            new IssueGenerator(project.getName(),size).populate(new XmlFileStore(dir),size);
+        }
+
+        final OfflineIssueTracker oit = new OfflineIssueTracker(home,project);
+        try {
+            if(segments && !SegmentStore.exists(dir))
+                oit.migrateToSegmentStore();
+
+            final Random r = new Random(0);
+            final int rounds = Math.max(5,10000/size);
+
+            oit.getCache().setCapacity(Math.max(size,OfflineIssueTracker.DEFAULT_CACHE_SIZE));
+
+            new Benchmark("get(id) cold") {
+                protected void run(int i) throws Exception {
+                    oit.getCache().clear();
+                    oit.get(1+r.nextInt(size));
+                }
+            }.measure(100,1000,out);
+
+            new Benchmark("get(id) warm") {
+                protected void setUp() throws Exception {
+                    oit.getAll();
+                }
+                protected void run(int i) throws Exception {
+                    oit.get(1+r.nextInt(size));
+                }
+            }.measure(10000,100000,out);
+
+            new Benchmark("getAll() cold") {
+                protected void run(int i) throws Exception {
+                    oit.getCache().clear();
+                    oit.getAll();
+                }
+            }.measure(1,rounds,out);
+
+            final List<JNIssue> issues = new ArrayList<JNIssue>(oit.getAll());
+            new Benchmark("IssueDocument.create") {
+                protected void run(int i) {
+                    IssueDocument.create(issues.get(i%issues.size()));
+                }
+            }.measure(1000,Math.max(10000,size),out);
+
+            new Benchmark("buildSearchIndex()") {
+                protected void run(int i) throws Exception {
+                    oit.buildSearchIndex();
+                }
+            }.measure(1,Math.max(3,rounds/2),out);
+
+            search(oit,"text","crash","id");
+            search(oit,"text+sort","crash OR deadlock","-votes,id");
+            search(oit,"range(int)","votes:[5 TO 20]","id");
+            search(oit,"range(date)","created:[2007-03-01 TO 2007-06-30]","-lastmodified");
+            search(oit,"all+sort","*:*","priority,-votes");
+        } finally {
+            oit.close();
+        }
+    }
+
+    private void search(final OfflineIssueTracker oit, String name, final String query, final String sort) throws Exception {
+        new Benchmark("find("+name+")") {
+            protected void run(int i) throws Exception {
+                // measure the search itself, not the query cache
+                oit.getQueryCache().clear();
+                oit.find(query,IssueFilter.ALL,sort,0,PAGE);
+            }
+        }.measure(100,1000,out);
+
+        new Benchmark("find("+name+") cached") {
+            protected void run(int i) throws Exception {
+                oit.find(query,IssueFilter.ALL,sort,0,PAGE);
+            }
+        }.measure(100,10000,out);
+
+        new Benchmark("search("+name+")") {
+            protected void run(int i) throws Exception {
+                oit.getQueryCache().clear();
+                oit.search(query,sort).size();
+            }
+        }.measure(10,100,out);
+    }
+
+    private static final int PAGE = 25;
+
+    static {
+        // keep the output clean
+        if(System.getProperty("java.util.logging.config.file")==null)
+            java.util.logging.Logger.getLogger("org.kohsuke.jnt").setLevel(java.util.logging.Level.WARNING);
+    }
+}
@@ -0,0 +1,169 @@
+package org.kohsuke.jnt.lucene;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that every encoding round-trips and sorts in the same order as the numbers.
+ *
+ * <p>
+ * Each type is checked on the boundary values, a sweep of bit patterns spread evenly
+ * over the whole range, and random values.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class NumberUtilsTest extends TestCase {
+    private final Random random = new Random(0);
+
+    public void testInt() {
+        int[] values = ints();
+        for (int v : values) {
+            String s = NumberUtils.int2sortableStr(v);
+            assertEquals(INT_LEN,s.length());
+            assertNoSurrogate(s);
+            assertEquals(Integer.toString(v),NumberUtils.SortableStr2int(s));
+            assertEquals(s,NumberUtils.int2sortableStr(Integer.toString(v)));
+        }
+
+        Arrays.sort(values);
+        for( int i=1; i<values.length; i++ )
+            assertOrdered(NumberUtils.int2sortableStr(values[i-1]),NumberUtils.int2sortableStr(values[i]),values[i-1]==values[i]);
+    }
+
+    public void testLong() {
+        long[] values = longs();
+        for (long v : values) {
+            String s = NumberUtils.long2sortableStr(v);
+            assertEquals(LONG_LEN,s.length());
+            assertNoSurrogate(s);
+            assertEquals(Long.toString(v),NumberUtils.SortableStr2long(s));
+            assertEquals(s,NumberUtils.long2sortableStr(Long.toString(v)));
+        }
+
+        Arrays.sort(values);
+        for( int i=1; i<values.length; i++ )
+            assertOrdered(NumberUtils.long2sortableStr(values[i-1]),NumberUtils.long2sortableStr(values[i]),values[i-1]==values[i]);
+    }
+
+    public void testFloat() {
+        List<Float> values = new ArrayList<Float>();
+        for (int bits : ints())
+            values.add(Float.intBitsToFloat(bits));
+        values.addAll(Arrays.asList(0f,-0f,Float.MIN_VALUE,-Float.MIN_VALUE,Float.MAX_VALUE,-Float.MAX_VALUE,
+                Float.POSITIVE_INFINITY,Float.NEGATIVE_INFINITY,1f,-1f));
+
+        for (float v : values) {
+            if(Float.isNaN(v))  continue;   // NaN has many bit patterns, checked separately
+            String s = NumberUtils.float2sortableStr(v);
+            assertEquals(INT_LEN,s.length());
+            assertNoSurrogate(s);
+            assertSameBits(v,NumberUtils.SortableStr2float(s));
+            assertEquals(Float.toString(v),NumberUtils.SortableStr2floatStr(s));
+        }
+        assertTrue(Float.isNaN(NumberUtils.SortableStr2float(NumberUtils.float2sortableStr(Float.NaN))));
+
+        // Float.compareTo orders -0 before 0 and NaN after infinity, the same as the encoding
+        values.add(Float.NaN);
+        Float[] sorted = values.toArray(new Float[values.size()]);
+        Arrays.sort(sorted);
+        for( int i=1; i<sorted.length; i++ ) {
+            if(Float.isNaN(sorted[i]))  break;
+            assertOrdered(NumberUtils.float2sortableStr(sorted[i-1]),NumberUtils.float2sortableStr(sorted[i]),sorted[i-1].equals(sorted[i]));
+        }
+        assertTrue(NumberUtils.float2sortableStr(Float.POSITIVE_INFINITY).compareTo(NumberUtils.float2sortableStr(Float.NaN))<0);
+    }
+
+    public void testDouble() {
+        List<Double> values = new ArrayList<Double>();
+        for (long bits : longs())
+            values.add(Double.longBitsToDouble(bits));
+        values.addAll(Arrays.asList(0d,-0d,Double.MIN_VALUE,-Double.MIN_VALUE,Double.MAX_VALUE,-Double.MAX_VALUE,
+                Double.POSITIVE_INFINITY,Double.NEGATIVE_INFINITY,1d,-1d));
+
+        for (double v : values) {
+            if(Double.isNaN(v)) continue;
+            String s = NumberUtils.double2sortableStr(v);
+            assertEquals(LONG_LEN,s.length());
+            assertNoSurrogate(s);
+            assertSameBits(v,NumberUtils.SortableStr2double(s));
+            assertEquals(Double.toString(v),NumberUtils.SortableStr2doubleStr(s));
+        }
+        assertTrue(Double.isNaN(NumberUtils.SortableStr2double(NumberUtils.double2sortableStr(Double.NaN))));
+
+        values.add(Double.NaN);
+        Double[] sorted = values.toArray(new Double[values.size()]);
+        Arrays.sort(sorted);
+        for( int i=1; i<sorted.length; i++ ) {
+            if(Double.isNaN(sorted[i]))  break;
+            assertOrdered(NumberUtils.double2sortableStr(sorted[i-1]),NumberUtils.double2sortableStr(sorted[i]),sorted[i-1].equals(sorted[i]));
+        }
+        assertTrue(NumberUtils.double2sortableStr(Double.POSITIVE_INFINITY).compareTo(NumberUtils.double2sortableStr(Double.NaN))<0);
+    }
+
+    /**
+     * Boundaries, every bit pattern at a prime stride, and random values.
+     */
+    private int[] ints() {
+        List<Integer> r = new ArrayList<Integer>();
+        for (int v : new int[]{Integer.MIN_VALUE,Integer.MIN_VALUE+1,-4097,-4096,-4095,-1,0,1,4095,4096,4097,
+                0xffffff,0x1000000,Integer.MAX_VALUE-1,Integer.MAX_VALUE})
+            r.add(v);
+        for( long v=Integer.MIN_VALUE; v<=Integer.MAX_VALUE; v+=65521 )
+            r.add((int)v);
+        for( int i=0; i<10000; i++ )
+            r.add(random.nextInt());
+
+        int[] a = new int[r.size()];
+        for( int i=0; i<a.length; i++ )
+            a[i] = r.get(i);
+        return a;
+    }
+
+    private long[] longs() {
+        List<Long> r = new ArrayList<Long>();
+        for (long v : new long[]{Long.MIN_VALUE,Long.MIN_VALUE+1,-32769,-32768,-32767,-1,0,1,32767,32768,32769,
+                1L<<30,1L<<45,1L<<60,Integer.MIN_VALUE,Integer.MAX_VALUE,Long.MAX_VALUE-1,Long.MAX_VALUE})
+            r.add(v);
+        // one bit pattern per chunk of the top 16 bits, with the lower bits varied
+        for( int hi=0; hi<0x10000; hi++ )
+            r.add(((long)hi<<48)|(random.nextLong()>>>16));
+        for( int i=0; i<10000; i++ )
+            r.add(random.nextLong());
+
+        long[] a = new long[r.size()];
+        for( int i=0; i<a.length; i++ )
+            a[i] = r.get(i);
+        return a;
+    }
+
+    private static void assertOrdered(String lower, String higher, boolean equal) {
+        int c = lower.compareTo(higher);
+        if(equal)
+            assertEquals(0,c);
+        else
+            assertTrue(c<0);
+    }
+
+    private static void assertNoSurrogate(String s) {
+        for( int i=0; i<s.length(); i++ )
+            assertTrue(s.charAt(i)<0xd800);
+    }
+
+    private static void assertSameBits(float expected, float actual) {
+        assertEquals(Float.floatToRawIntBits(expected),Float.floatToRawIntBits(actual));
+    }
+
+    private static void assertSameBits(double expected, double actual) {
+        assertEquals(Double.doubleToRawLongBits(expected),Double.doubleToRawLongBits(actual));
+    }
+
+    /**
+     * Number of chars in the encoding of an int or a float, and of a long or a double.
+     */
+    private static final int INT_LEN = 3;
+    private static final int LONG_LEN = 5;
+}